@@ -0,0 +1,26 @@
+package org.racetrack.collections;
+
+/**
+ * Lock-free cache from long keys to boolean values (see {@link ConcurrentLongIntCache})
+ */
+public class ConcurrentLongBooleanCache {
+
+  private ConcurrentLongIntCache cache;
+
+  public ConcurrentLongBooleanCache(int capacity) {
+    cache = new ConcurrentLongIntCache(capacity);
+  }
+
+  /**
+   * Returns the cached value or null if the key is not cached
+   */
+  public Boolean get(long key) {
+    int value = cache.getIfAbsent(key, -1);
+    return value != -1 ? value == 1 : null;
+  }
+
+  public void put(long key, boolean value) {
+    cache.put(key, value ? 1 : 0);
+  }
+
+}
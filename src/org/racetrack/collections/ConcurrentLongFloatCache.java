@@ -0,0 +1,27 @@
+package org.racetrack.collections;
+
+/**
+ * Lock-free cache from long keys to float values (see {@link ConcurrentLongIntCache}). The values are stored by their
+ * bits, NaN is stored as the canonical NaN.
+ */
+public class ConcurrentLongFloatCache {
+
+  // a NaN never returned by Float.floatToIntBits()
+  private static final int ABSENT = 0x7fc00001;
+
+  private ConcurrentLongIntCache cache;
+
+  public ConcurrentLongFloatCache(int capacity) {
+    cache = new ConcurrentLongIntCache(capacity, ABSENT);
+  }
+
+  public float getIfAbsent(long key, float ifAbsent) {
+    int bits = cache.getIfAbsent(key, ABSENT);
+    return bits != ABSENT ? Float.intBitsToFloat(bits) : ifAbsent;
+  }
+
+  public void put(long key, float value) {
+    cache.put(key, Float.floatToIntBits(value));
+  }
+
+}
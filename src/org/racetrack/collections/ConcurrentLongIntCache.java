@@ -0,0 +1,78 @@
+package org.racetrack.collections;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Fixed size open addressing hash table from long keys to int values, which is safe to be used by many threads
+ * without locks. A key is stored in a slot once and never removed, so a reader either finds the key with its value or
+ * a miss. A value not yet published by the writer of the key is also a miss, the caller has to calculate it again.
+ *
+ * Being a cache, a value is dropped if no free slot is found within a few probes. Long.MIN_VALUE marks empty slots
+ * and must not be used as key.
+ */
+public class ConcurrentLongIntCache {
+
+  private static final long EMPTY = Long.MIN_VALUE;
+  private static final int MAX_PROBES = 16;
+
+  private AtomicLongArray keys;
+  private AtomicIntegerArray values;
+  private int mask;
+  private int absent;
+
+  /**
+   * Creates a cache for about the given count of keys. Integer.MIN_VALUE is not cached.
+   */
+  public ConcurrentLongIntCache(int capacity) {
+    this(capacity, Integer.MIN_VALUE);
+  }
+
+  ConcurrentLongIntCache(int capacity, int absent) {
+    int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES));
+    keys = new AtomicLongArray(size);
+    values = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      keys.set(i, EMPTY);
+      values.set(i, absent);
+    }
+    mask = size - 1;
+    this.absent = absent;
+  }
+
+  public int getIfAbsent(long key, int ifAbsent) {
+    int index = getIndex(key);
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      long slot = keys.get(index);
+      if (slot == key) {
+        int value = values.get(index);
+        return value != absent ? value : ifAbsent;
+      }
+      if (slot == EMPTY)
+        return ifAbsent;
+      index = (index + 1) & mask;
+    }
+    return ifAbsent;
+  }
+
+  public void put(long key, int value) {
+    int index = getIndex(key);
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      long slot = keys.get(index);
+      if (slot == EMPTY) {
+        // the slot is taken either by this or by another thread, a slot never gets empty again
+        slot = keys.compareAndSet(index, EMPTY, key) ? key : keys.get(index);
+      }
+      if (slot == key) {
+        values.set(index, value);
+        return;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  private int getIndex(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+}
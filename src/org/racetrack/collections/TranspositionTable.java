@@ -0,0 +1,88 @@
+package org.racetrack.collections;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Fixed size hash table for search results, which is safe to be used by many threads without locks. Each bucket has
+ * two entries: the first one keeps the entry with the highest priority (e.g. the most expensive to calculate), the
+ * second one is always replaced. Entries are immutable, so a reader always sees a consistent entry.
+ *
+ * Besides the 64 bit hash the complete key is stored and compared on lookup, so hash collisions never return a wrong
+ * value.
+ */
+public class TranspositionTable<V> {
+
+  // estimated size of an entry with its key and value
+  public static final int ENTRY_BYTES = 128;
+
+  private static class Entry<V> {
+    private final long hash;
+    private final long[] key;
+    private final int priority;
+    private final V value;
+
+    private Entry(long hash, long[] key, int priority, V value) {
+      this.hash = hash;
+      this.key = key;
+      this.priority = priority;
+      this.value = value;
+    }
+
+    private boolean matches(long hash, long[] key) {
+      return this.hash == hash && Arrays.equals(this.key, key);
+    }
+  }
+
+  /**
+   * Creates a table using at most about the given memory in megabytes
+   */
+  public static <V> TranspositionTable<V> withMemory(int megabytes) {
+    long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+    int buckets = Integer.highestOneBit((int) Math.max(1, Math.min(entries / 2, 1 << 29)));
+    return new TranspositionTable<>(buckets);
+  }
+
+  private AtomicReferenceArray<Entry<V>> entries;
+  private int mask;
+
+  private TranspositionTable(int buckets) {
+    entries = new AtomicReferenceArray<>(buckets * 2);
+    mask = buckets - 1;
+  }
+
+  public V get(long hash, long[] key) {
+    int index = getIndex(hash);
+    Entry<V> entry = entries.get(index);
+    if (entry != null && entry.matches(hash, key))
+      return entry.value;
+    entry = entries.get(index + 1);
+    if (entry != null && entry.matches(hash, key))
+      return entry.value;
+    return null;
+  }
+
+  /**
+   * Stores the value in the first entry of the bucket if its priority is not lower than the one stored there, in the
+   * second entry otherwise
+   */
+  public void put(long hash, long[] key, int priority, V value) {
+    int index = getIndex(hash);
+    Entry<V> entry = new Entry<>(hash, key, priority, value);
+    while (true) {
+      Entry<V> first = entries.get(index);
+      if (first == null || first.priority <= priority || first.matches(hash, key)) {
+        if (entries.compareAndSet(index, first, entry))
+          return;
+      } else {
+        entries.set(index + 1, entry);
+        return;
+      }
+    }
+  }
+
+  private int getIndex(long hash) {
+    return (int) ((hash ^ (hash >>> 32)) & mask) << 1;
+  }
+
+}
@@ -0,0 +1,50 @@
+package org.racetrack.concurrent;
+
+import java.util.concurrent.*;
+
+import org.racetrack.config.*;
+
+/**
+ * Thread pools shared by all games. The searches (path finding, tour planning and game tree search) fork their work
+ * into the compute pool, whose parallelism is set by {@link Settings#computeThreads()}. The tasks waiting for them
+ * (e.g. a path finder with a timeout) run in the task executor, which reuses its threads instead of creating a pool per
+ * move.
+ *
+ * The budget of a game (see {@link #getGameBudget()}) limits the count of opponent path finders and of monte carlo
+ * searches a game runs at the same time. It doesn't limit the tasks these searches, the tour planning and the game tree
+ * search fork into the compute pool, those are scheduled by the pool together with the tasks of all other games.
+ */
+public final class ComputePool {
+
+  private static ForkJoinPool compute;
+  private static ExecutorService tasks;
+
+  public static synchronized ForkJoinPool get() {
+    if (compute == null) {
+      compute = new ForkJoinPool(Settings.getInstance().computeThreads());
+    }
+    return compute;
+  }
+
+  public static synchronized ExecutorService getTaskExecutor() {
+    if (tasks == null) {
+      tasks = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return tasks;
+  }
+
+  /**
+   * Returns the count of opponent path finders or monte carlo searches a game may run at the same time
+   */
+  public static int getGameBudget() {
+    return Integer.min(Settings.getInstance().maxParallelTourThreads(), get().getParallelism());
+  }
+
+  private ComputePool() {
+  }
+
+}
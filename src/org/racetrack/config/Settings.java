@@ -7,7 +7,7 @@ public class Settings {
 
   public enum Property {
 
-    user, password, secureConnection, withChat, withNewGames, useBetaApi, gtsMaxStatesPerRound, maxExecutionTimeMinutes, maxParallelTourThreads, withMultiCrash
+    user, password, secureConnection, withChat, withNewGames, useBetaApi, gtsMaxStatesPerRound, gtsTableSizeMb, maxExecutionTimeMinutes, maxParallelTourThreads, computeThreads, withMultiCrash, withPackedSearch, withAStarSearch, withMovesToGo, withTourSearch, withGtsDeepening, withPathCache, withMoveTable, mctsMinOpponents
 
   }
 
@@ -72,6 +72,41 @@ public class Settings {
     return multiCrashString != null ? Boolean.valueOf(multiCrashString) : false;
   }
 
+  public boolean withPackedSearch() {
+    String packedSearchString = get(Property.withPackedSearch);
+    return packedSearchString != null ? Boolean.valueOf(packedSearchString) : false;
+  }
+
+  public boolean withAStarSearch() {
+    String aStarSearchString = get(Property.withAStarSearch);
+    return aStarSearchString != null ? Boolean.valueOf(aStarSearchString) : false;
+  }
+
+  public boolean withMovesToGo() {
+    String movesToGoString = get(Property.withMovesToGo);
+    return movesToGoString != null ? Boolean.valueOf(movesToGoString) : false;
+  }
+
+  public boolean withTourSearch() {
+    String tourSearchString = get(Property.withTourSearch);
+    return tourSearchString != null ? Boolean.valueOf(tourSearchString) : false;
+  }
+
+  public boolean withGtsDeepening() {
+    String gtsDeepeningString = get(Property.withGtsDeepening);
+    return gtsDeepeningString != null ? Boolean.valueOf(gtsDeepeningString) : false;
+  }
+
+  public boolean withPathCache() {
+    String pathCacheString = get(Property.withPathCache);
+    return pathCacheString != null ? Boolean.valueOf(pathCacheString) : false;
+  }
+
+  public boolean withMoveTable() {
+    String moveTableString = get(Property.withMoveTable);
+    return moveTableString != null ? Boolean.valueOf(moveTableString) : false;
+  }
+
   public boolean activateChatbot() {
     String chatString = get(Property.withChat);
     return chatString != null ? Boolean.valueOf(chatString) : false;
@@ -93,10 +128,30 @@ public class Settings {
     return Integer.max(minThreads, 1);
   }
 
+  /**
+   * Parallelism of the thread pool shared by the searches of all games, all processors if not set
+   */
+  public int computeThreads() {
+    int threads = getInt(Property.computeThreads);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
   public int gtsMaxStatesPerRound() {
     return getInt(Property.gtsMaxStatesPerRound);
   }
 
+  /**
+   * Minimum count of opponents nearby for a monte carlo tree search instead of the game tree search, 0 to disable
+   */
+  public int mctsMinOpponents() {
+    return getInt(Property.mctsMinOpponents);
+  }
+
+  public int gtsTableSizeMb() {
+    int tableSize = getInt(Property.gtsTableSizeMb);
+    return tableSize > 0 ? tableSize : 64;
+  }
+
   public int maxExecutionTimeMinutes() {
     return getInt(Property.maxExecutionTimeMinutes);
   }
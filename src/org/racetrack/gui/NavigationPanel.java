@@ -5,8 +5,6 @@ import java.awt.event.*;
 
 import javax.swing.*;
 
-import org.eclipse.collections.api.list.*;
-import org.racetrack.karoapi.*;
 import org.racetrack.track.*;
 
 public class NavigationPanel extends JPanel {
@@ -14,7 +12,10 @@ public class NavigationPanel extends JPanel {
   private static final long serialVersionUID = 1L;
 
   private PathFinder pathFinder;
-  private Paths paths = null;
+  // paths are kept in their compact form while being shown
+  private PathDag paths = null;
+  private int endLevel;
+  private int startLevel;
   private int scale;
 
   public NavigationPanel(PathFinder pathFinder, int scale) {
@@ -25,7 +26,7 @@ public class NavigationPanel extends JPanel {
   }
 
   public NavigationPanel(Paths paths, int scale, int cols, int rows) {
-    this.paths = paths;
+    setPaths(paths);
     this.scale = scale;
 
     setBackground(GamePanel.BACKGROUND_DEFAULT);
@@ -42,40 +43,45 @@ public class NavigationPanel extends JPanel {
     int brightnessRange = 100;
 
     if (paths != null) {
-      int endLevel = paths.getMinTotalLength();
-      int startLevel = endLevel - paths.getMinLength();
       for (int i = endLevel + 1; i > startLevel; i--) {
-        MutableList<Move> levelMoves = paths.getMovesOfRound(i);
-
-        for (Move move : levelMoves) {
-          int offset = endLevel - (move.getTotalLen() - move.getPathLen());
-          if (move.getPathLen() >= 1) {
-            if (move.getPathLen() == 1) {
+        int totalLen = i - 1;
+        for (int move = paths.getRoundStart(i); move < paths.getRoundEnd(i); move++) {
+          int pathLen = paths.getPathLen(move);
+          int offset = endLevel - (totalLen - pathLen);
+          if (pathLen >= 1) {
+            if (pathLen == 1) {
               g2d.setColor(Color.BLACK);
             } else {
-              int brightness = 50 + brightnessRange - (brightnessRange / offset) * move.getPathLen();
+              int brightness = 50 + brightnessRange - (brightnessRange / offset) * pathLen;
               g2d.setColor(new Color(brightness, brightness, brightness));
             }
-            int x1 = (move.getX() - move.getXv()) * scale + scale / 2;
-            int y1 = (move.getY() - move.getYv()) * scale + scale / 2;
-            if (move.isCrash()) {
-              x1 = move.getPred().getX() * scale + scale / 2;
-              y1 = move.getPred().getY() * scale + scale / 2;
+            int x1 = (paths.getX(move) - paths.getXv(move)) * scale + scale / 2;
+            int y1 = (paths.getY(move) - paths.getYv(move)) * scale + scale / 2;
+            if (paths.isCrash(move) && paths.countPredecessors(move) > 0) {
+              int pred = paths.getPredecessor(move, 0);
+              x1 = paths.getX(pred) * scale + scale / 2;
+              y1 = paths.getY(pred) * scale + scale / 2;
               g2d.setColor(Color.RED);
             }
-            int x2 = move.getX() * scale + scale / 2;
-            int y2 = move.getY() * scale + scale / 2;
+            int x2 = paths.getX(move) * scale + scale / 2;
+            int y2 = paths.getY(move) * scale + scale / 2;
             g2d.drawLine(x1, y1, x2, y2);
             g2d.fillOval(x2 - scale / 4, y2 - scale / 4, scale / 2, scale / 2);
             Font font = new Font(g2d.getFont().getFontName(), Font.PLAIN, 9);
             g2d.setFont(font);
-            g2d.drawString(Integer.toString(move.getTotalLen()), (x2 + x1) / 2, (y2 + y1) / 2);
+            g2d.drawString(Integer.toString(totalLen), (x2 + x1) / 2, (y2 + y1) / 2);
           }
         }
       }
     }
   }
 
+  private void setPaths(Paths paths) {
+    endLevel = paths.getMinTotalLength();
+    startLevel = endLevel - paths.getMinLength();
+    this.paths = PathDag.of(paths);
+  }
+
   public void setScale(int scale) {
     this.scale = scale;
   }
@@ -88,7 +94,7 @@ public class NavigationPanel extends JPanel {
           PathWorker pathWorker = new PathWorker((JFrame) SwingUtilities.getWindowAncestor(NavigationPanel.this),
               pathFinder);
           pathWorker.execute();
-          paths = pathWorker.get();
+          setPaths(pathWorker.get());
 
           pathWorker.cancel(true);
         } catch (Exception ex) {
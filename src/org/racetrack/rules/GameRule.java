@@ -33,12 +33,38 @@ public class GameRule extends MapRule {
     return isMapCircuit() && hasXdFinishline(move) && !isXingFinishlineAllowed(move);
   }
 
+  /**
+   * Same as {@link #hasForbidXdFinishline(Move)} for a packed state. A move object is only created to check the angle
+   * when the finishline was actually crossed.
+   */
+  public boolean hasForbidXdFinishline(int x, int y, int xv, int yv) {
+    return isMapCircuit() && hasXdFinishline(x, y, xv, yv) && !isXingFinishlineAllowed(new Move(x, y, xv, yv));
+  }
+
   public boolean hasNotXdFinishlineOnF1Circuit(LogMove lastMove) {
     return isMapCircuit() && game.isFormula1() && !hasXdFinishline(lastMove);
   }
 
   public boolean hasXdFinishlineForDist(Move move) {
-    return isMapCircuit() && (game.isFormula1() || game.isClassic()) && hasXdFinishline(move);
+    return isFinishlineBlockedForDist() && hasXdFinishline(move);
+  }
+
+  public boolean hasXdFinishlineForDist(int x, int y, int xv, int yv) {
+    return isFinishlineBlockedForDist() && hasXdFinishline(x, y, xv, yv);
+  }
+
+  /**
+   * Tells if distances between checkpoints have to be measured without crossing the finishline
+   */
+  public boolean isFinishlineBlockedForDist() {
+    return isMapCircuit() && (game.isFormula1() || game.isClassic());
+  }
+
+  /**
+   * Returns the direction the finishline may be crossed in, which is free on maps that are no circuit
+   */
+  public Game.Dir getFinishDirection() {
+    return isMapCircuit() ? game.getDirection() : Game.Dir.free;
   }
 
   protected boolean isXingFinishlineAllowed(Move move) {
@@ -55,6 +81,14 @@ public class GameRule extends MapRule {
     return true;
   }
 
+  /**
+   * Tells if this rule decides about the next moves only by their position and velocity. Rules looking at predecessors,
+   * path length or crashs of a move can't be evaluated on packed states and have to override this.
+   */
+  public boolean isHistoryFree() {
+    return true;
+  }
+
   public Predicate<Move> filterPossibles() {
     return mapRule;
   }
@@ -0,0 +1,102 @@
+package org.racetrack.rules;
+
+import java.util.*;
+
+/**
+ * Offsets of the tiles crossed by a move relative to its end, in the order from the end back to the start of the move.
+ * They only depend on the velocity, so they are calculated once for all velocities up to {@link #MAX_SPEED} in both
+ * directions. Crossing checks then only loop over the offsets.
+ */
+final class LineOffsets {
+
+  static final int MAX_SPEED = 32;
+
+  private static final int WIDTH = 2 * MAX_SPEED + 1;
+  private static final int[][] OFFSETS = new int[WIDTH * WIDTH][];
+
+  static {
+    for (int yv = -MAX_SPEED; yv <= MAX_SPEED; yv++) {
+      for (int xv = -MAX_SPEED; xv <= MAX_SPEED; xv++) {
+        OFFSETS[(yv + MAX_SPEED) * WIDTH + xv + MAX_SPEED] = walk(xv, yv);
+      }
+    }
+  }
+
+  /**
+   * Returns the offsets as pairs of x and y, the first pair is the end of the move (0, 0), the last one its start
+   */
+  static int[] get(int xv, int yv) {
+    if (Math.abs(xv) > MAX_SPEED || Math.abs(yv) > MAX_SPEED)
+      return walk(xv, yv);
+    return OFFSETS[(yv + MAX_SPEED) * WIDTH + xv + MAX_SPEED];
+  }
+
+  /**
+   * Bresenham's line algorithm with modification to visit all crossed fields. See Karopapier sourcecode at GitHub.
+   */
+  private static int[] walk(int xv, int yv) {
+    int x0 = 0;
+    int y0 = 0;
+
+    int incx = -(xv == 0 ? 0 : (xv > 0 ? 1 : -1));
+    int incy = -(yv == 0 ? 0 : (yv > 0 ? 1 : -1));
+    int dx = Math.abs(xv);
+    int dy = Math.abs(yv);
+
+    int pdx, pdy, qdx, qdy, ddx, ddy;
+    int el, es;
+    if (dx > dy) { // x is fast direction
+      pdx = incx;
+      pdy = 0;
+      qdx = 0;
+      qdy = incy;
+      ddx = incx;
+      ddy = incy;
+      es = dy;
+      el = dx;
+    } else { // y is fast direction
+      pdx = 0;
+      pdy = incy;
+      qdx = incx;
+      qdy = 0;
+      ddx = incx;
+      ddy = incy;
+      es = dx;
+      el = dy;
+    }
+
+    int[] offsets = new int[2 * (dx + dy + 1)];
+    int count = 0;
+    float err = (el - es) / 2f;
+    /*
+     * the signum of err indicates on which side of the vector the center of the last considered box is located. if
+     * there is a deviation in the "slower" direction, err is positive, and we take a step in the "faster" direction.if
+     * there is a deviation in the "faster" direction, err is negative, and we take a step in the "slower" direction.
+     */
+    while (true) {
+      offsets[count++] = x0;
+      offsets[count++] = y0;
+      if (x0 == -xv && y0 == -yv)
+        return Arrays.copyOf(offsets, count);
+
+      if (err < 0) { // move in slow direction
+        err += el;
+        x0 += qdx;
+        y0 += qdy;
+      } else if (err > 0) { // move in fast direction
+        err -= es;
+        x0 += pdx;
+        y0 += pdy;
+      } else { // diagonal
+        err += el;
+        err -= es;
+        x0 += ddx;
+        y0 += ddy;
+      }
+    }
+  }
+
+  private LineOffsets() {
+  }
+
+}
@@ -1,27 +1,35 @@
 package org.racetrack.rules;
 
-import java.util.*;
-import java.util.concurrent.locks.*;
-
 import org.eclipse.collections.api.block.predicate.*;
 import org.eclipse.collections.api.collection.*;
 import org.eclipse.collections.api.list.*;
-import org.eclipse.collections.api.map.primitive.*;
-import org.eclipse.collections.impl.factory.*;
-import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.eclipse.collections.api.list.primitive.*;
+import org.eclipse.collections.api.set.primitive.*;
+import org.eclipse.collections.impl.block.factory.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.eclipse.collections.impl.set.mutable.primitive.*;
+import org.racetrack.collections.*;
+import org.racetrack.config.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.track.*;
 
 public class MapRule {
 
+  /**
+   * Maximum count of successors of a move, one for each acceleration
+   */
+  public static final int MAX_NEXT = 9;
+
   private static final int MAX_DIST_FINISH_FOR_F1 = 6;
 
-  private final ReadWriteLock offTrackLock = new SeqLock(false);
-  private final ReadWriteLock onRoadLock = new SeqLock(false);
-  private MutableIntBooleanMap offTrack = new IntBooleanHashMap(2 << 18);
-  private MutableIntBooleanMap onRoad = new IntBooleanHashMap(2 << 18);
+  // data shared by the rules on the same map (see MapRuleData)
+  private ConcurrentLongBooleanCache offTrack;
+  private ConcurrentLongBooleanCache onRoad;
 
   protected KaroMap map;
+  private TileMasks masks;
+  // tables of all moves of the map, null if the map is too large
+  private MoveTable moves;
 
   protected Predicate<Move> mapRule = move -> move.isMoving() && !isOffTrack(move);
 
@@ -32,48 +40,66 @@ public class MapRule {
 
   public MapRule(KaroMap map) {
     this.map = map;
+    MapRuleData data = MapRuleData.get(map, this::createData);
+    masks = data.masks;
+    moves = data.moves;
+    offTrack = data.offTrack;
+    onRoad = data.onRoad;
+    finishAngle = data.finishAngle;
+    startFinishDist = data.startFinishDist;
+  }
+
+  private MapRuleData createData() {
+    masks = new TileMasks(map);
+    // without the table the moves are looked up in the masks and kept in the caches
+    moves = Settings.getInstance().withMoveTable() ? MoveTable.get(map, masks) : null;
+    offTrack = new ConcurrentLongBooleanCache(2 << 18);
+    onRoad = new ConcurrentLongBooleanCache(2 << 18);
 
     finishAngle = getAngleForFinishVector();
+    return new MapRuleData(masks, moves, offTrack, onRoad, finishAngle, startFinishDist);
   }
 
   private boolean isOffTrack(Move move) {
-    int key = move.hashCode();
-    SeqLock.SeqReadLock lock = (SeqLock.SeqReadLock) offTrackLock.readLock();
-    try {
-      while (true) {
-        long counter = lock.tryReadLock();
-        boolean isOffTrack = offTrack.getOrThrow(key);
-        if (lock.retryReadLock(counter))
-          return isOffTrack;
-      }
-    } catch (IllegalStateException ise) {
-      boolean isOffTrack = !map.contains(move.getX(), move.getY())
-          || isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), MapTile.OFF_TRACK, false);
-      offTrackLock.writeLock().lock();
-      offTrack.put(key, isOffTrack);
-      offTrackLock.writeLock().unlock();
-      return isOffTrack;
-    }
+    return isOffTrack(move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+  private boolean isOffTrack(int x, int y, int xv, int yv) {
+    if (moves != null && moves.contains(x, y, xv, yv))
+      return !moves.is(MoveTable.ON_TRACK, x, y, xv, yv);
+
+    long key = MoveState.key(x, y, xv, yv);
+    Boolean cached = offTrack.get(key);
+    if (cached != null)
+      return cached;
+
+    boolean isOffTrack = !map.contains(x, y) || isOffTrackUncached(x, y, xv, yv);
+    offTrack.put(key, isOffTrack);
+    return isOffTrack;
   };
 
+  private boolean isOffTrackUncached(int x, int y, int xv, int yv) {
+    if (moves != null && moves.contains(x, y, xv, yv))
+      return !moves.is(MoveTable.ON_TRACK, x, y, xv, yv);
+    return masks.isDrivenAcross(x, y, xv, yv, masks.offTrack(), false);
+  }
+
   private boolean isOnRoad(Move move) {
-    int key = move.hashCode();
-    SeqLock.SeqReadLock lock = (SeqLock.SeqReadLock) onRoadLock.readLock();
-    try {
-      while (true) {
-        long counter = lock.tryReadLock();
-        boolean isOnRoad = onRoad.getOrThrow(key);
-        if (lock.retryReadLock(counter))
-          return isOnRoad;
-      }
-    } catch (IllegalStateException ise) {
-      boolean isOnRoad = !isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), MapTile.CP_AND_FINISH,
-          false);
-      onRoadLock.writeLock().lock();
-      onRoad.put(key, isOnRoad);
-      onRoadLock.writeLock().unlock();
-      return isOnRoad;
-    }
+    return isOnRoad(move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+  private boolean isOnRoad(int x, int y, int xv, int yv) {
+    if (moves != null && moves.contains(x, y, xv, yv))
+      return moves.is(MoveTable.ON_ROAD, x, y, xv, yv);
+
+    long key = MoveState.key(x, y, xv, yv);
+    Boolean cached = onRoad.get(key);
+    if (cached != null)
+      return cached;
+
+    boolean isOnRoad = !masks.isDrivenAcross(x, y, xv, yv, masks.cpOrFinish(), false);
+    onRoad.put(key, isOnRoad);
+    return isOnRoad;
   }
 
   public Predicate<Move> filterMap() {
@@ -84,6 +110,15 @@ public class MapRule {
     return moves.select(mapRule);
   }
 
+  /**
+   * Removes the moves not accepted by the rule from the next moves in place. The next moves of the map rule are a new
+   * collection, so rules can filter them further without copying.
+   */
+  protected static MutableCollection<Move> retain(MutableCollection<Move> nextMoves, Predicate<Move> rule) {
+    nextMoves.removeIf(Predicates.not(rule));
+    return nextMoves;
+  }
+
   public MutableCollection<Move> filterNextMvDist(Move move) {
     return move.getNext().select(mapRule);
   };
@@ -96,14 +131,76 @@ public class MapRule {
     return mapRule.accept(move);
   }
 
+  /**
+   * Writes the keys (see {@link MoveState#key(int, int, int, int)}) of the successors accepted by the map rule into
+   * the buffer and returns their count. The buffer is reused by the caller and needs room for {@link #MAX_NEXT} keys,
+   * so no objects are created.
+   */
+  public int getNext(int x, int y, int xv, int yv, long[] next) {
+    int valid = getValidNext(x, y, xv, yv);
+    int count = 0;
+    for (int nextXv = xv - 1; nextXv <= xv + 1; nextXv++) {
+      for (int nextYv = yv - 1; nextYv <= yv + 1; nextYv++, valid >>>= 1) {
+        if ((valid & 1) != 0) {
+          next[count++] = MoveState.key(x + nextXv, y + nextYv, nextXv, nextYv);
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Checks all nine successors of a position and velocity in one call. Returns a bit for each acceleration in the
+   * order of x and then y acceleration from -1 to 1, which is set if the successor is accepted by the map rule. The
+   * moves are looked up in the move table, moves not covered by the table go through the cache of
+   * {@link #isValid(int, int, int, int)}.
+   */
+  public int getValidNext(int x, int y, int xv, int yv) {
+    int valid = 0;
+    int bit = 1;
+    for (int nextXv = xv - 1; nextXv <= xv + 1; nextXv++) {
+      for (int nextYv = yv - 1; nextYv <= yv + 1; nextYv++, bit <<= 1) {
+        if ((nextXv != 0 || nextYv != 0) && !isOffTrack(x + nextXv, y + nextYv, nextXv, nextYv)) {
+          valid |= bit;
+        }
+      }
+    }
+    return valid;
+  }
+
+  /**
+   * Same as the map rule for a move, but without the need to create a move object
+   */
+  public boolean isValid(int x, int y, int xv, int yv) {
+    return (xv != 0 || yv != 0) && !isOffTrack(x, y, xv, yv);
+  }
+
+  /**
+   * Same as {@link #isValid(int, int, int, int)} without caching the result, for calculations visiting every state of
+   * the map once
+   */
+  public boolean isValidUncached(int x, int y, int xv, int yv) {
+    return (xv != 0 || yv != 0) && map.contains(x, y) && !isOffTrackUncached(x, y, xv, yv);
+  }
+
+  public KaroMap getMap() {
+    return map;
+  }
+
   public boolean hasXdCp(Move move, MapTile cp) {
-    return !isOnRoad(move) && isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), cp.asList(), true);
+    return !isOnRoad(move)
+        && masks.isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), masks.of(cp), true);
+  }
+
+  public boolean hasXdCp(int x, int y, int xv, int yv, MapTile cp) {
+    return !isOnRoad(x, y, xv, yv) && masks.isDrivenAcross(x, y, xv, yv, masks.of(cp), true);
   }
 
   public boolean hasXdCp(LogMove move, MapTile cp) {
     if (move == null)
       return false;
-    if (!isOnRoad(move) && isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), cp.asList(), true))
+    if (!isOnRoad(move)
+        && masks.isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), masks.of(cp), true))
       return true;
     return hasXdCp((LogMove) move.getPred(), cp);
   }
@@ -111,7 +208,13 @@ public class MapRule {
   protected boolean hasXdFinishline(Move move) {
     if (move == null)
       return false;
-    return isDrivenAcross(move.getX(), move.getY(), move.getXv(), move.getYv(), MapTile.FINISH.asList(), false);
+    return hasXdFinishline(move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+  protected boolean hasXdFinishline(int x, int y, int xv, int yv) {
+    if (moves != null && moves.contains(x, y, xv, yv))
+      return moves.is(MoveTable.FINISH, x, y, xv, yv);
+    return masks.isDrivenAcross(x, y, xv, yv, masks.of(MapTile.FINISH), false);
   }
 
   protected boolean hasXdFinishline(LogMove lastMove) {
@@ -124,98 +227,38 @@ public class MapRule {
     return false;
   }
 
-  /**
-   * Bresenham's line algorithm with modification to check all crossed fields. See Karopapier sourcecode at GitHub.
-   *
-   * @param withCpRule
-   *          The Karopapier website only recognized a checkpoint as passed when driven over as last MapTile by the
-   *          move. When checking for crossing e.g. grass this behavior is undesired and the cpRule should be disabled
-   */
-  private boolean isDrivenAcross(int x, int y, int xv, int yv, Collection<MapTile> tiles, boolean withCpRule) {
-    int xStart = x - xv;
-    int yStart = y - yv;
-    int x0 = x;
-    int y0 = y;
-
-    int incx = -(xv == 0 ? 0 : (xv > 0 ? 1 : -1));
-    int incy = -(yv == 0 ? 0 : (yv > 0 ? 1 : -1));
-    int dx = Math.abs(xv);
-    int dy = Math.abs(yv);
-
-    int pdx, pdy, qdx, qdy, ddx, ddy;
-    int el, es;
-    if (dx > dy) { // x is fast direction
-      pdx = incx;
-      pdy = 0;
-      qdx = 0;
-      qdy = incy;
-      ddx = incx;
-      ddy = incy;
-      es = dy;
-      el = dx;
-    } else { // y is fast direction
-      pdx = 0;
-      pdy = incy;
-      qdx = incx;
-      qdy = 0;
-      ddx = incx;
-      ddy = incy;
-      es = dx;
-      el = dy;
-    }
-
-    float err = (el - es) / 2f;
-    /*
-     * the signum of err indicates on which side of the vector the center of the last considered box is located. if
-     * there is a deviation in the "slower" direction, err is positive, and we take a step in the "faster" direction.if
-     * there is a deviation in the "faster" direction, err is negative, and we take a step in the "slower" direction.
-     */
-    while (true) {
-      MapTile mapTile = map.getTileOf(x0, y0);
-      if (tiles.contains(mapTile))
-        return true;
-      if (withCpRule && mapTile.isCpOrFinish())
-        return false;
-      if (x0 == xStart && y0 == yStart)
-        return false;
-
-      if (err < 0) { // move in slow direction
-        err += el;
-        x0 += qdx;
-        y0 += qdy;
-      } else if (err > 0) { // move in fast direction
-        err -= es;
-        x0 += pdx;
-        y0 += pdy;
-      } else { // diagonal
-        err += el;
-        err -= es;
-        x0 += ddx;
-        y0 += ddy;
-      }
-    }
-  }
-
   protected FinishLineAngle getAngleForFinishVector() {
     FinishLineAngle angleRange = null;
-    Set<Move> visitedMoves = Sets.mutable.empty();
-    Queue<Move> moveQueue = new LinkedList<>(map.getTilesAsMoves(MapTile.START));
+    MutableLongSet visitedMoves = new LongHashSet();
+    MutableLongList moveQueue = new LongArrayList();
+    for (Move start : map.getTilesAsMoves(MapTile.START)) {
+      moveQueue.add(MoveState.of(start));
+    }
 
-    while (!moveQueue.isEmpty()) {
-      Move move = moveQueue.poll();
-      if (move.getTotalLen() > startFinishDist + MAX_DIST_FINISH_FOR_F1)
+    long[] next = new long[MAX_NEXT];
+    for (int i = 0; i < moveQueue.size(); i++) {
+      long state = moveQueue.get(i);
+      int len = MoveState.pathLen(state);
+      if (len > startFinishDist + MAX_DIST_FINISH_FOR_F1)
         return angleRange;
 
-      if (!visitedMoves.contains(move)) {
-        visitedMoves.add(move);
-        if (hasXdFinishline(move)) {
+      if (visitedMoves.add(MoveState.key(state))) {
+        int x = MoveState.x(state);
+        int y = MoveState.y(state);
+        int xv = MoveState.xv(state);
+        int yv = MoveState.yv(state);
+        if (hasXdFinishline(x, y, xv, yv)) {
+          Move move = new Move(x, y, xv, yv);
           if (angleRange == null) {
             angleRange = new FinishLineAngle(move);
-            startFinishDist = move.getPathLen();
+            startFinishDist = len;
           }
           angleRange.add(move);
-        } else {
-          moveQueue.addAll(move.getNext().select(mapRule));
+        } else if (len < MoveState.MAX_PATH_LEN) {
+          int count = getNext(x, y, xv, yv, next);
+          for (int n = 0; n < count; n++) {
+            moveQueue.add(MoveState.of(next[n], len + 1));
+          }
         }
       }
     }
@@ -241,7 +284,7 @@ public class MapRule {
     return isMapCircuitCached;
   }
 
-  protected class FinishLineAngle {
+  protected static class FinishLineAngle {
 
     private double offset = 0d;
     private double lower = 0d;
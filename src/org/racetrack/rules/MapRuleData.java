@@ -0,0 +1,45 @@
+package org.racetrack.rules;
+
+import java.util.function.*;
+
+import org.racetrack.collections.*;
+import org.racetrack.karoapi.*;
+import org.racetrack.rules.MapRule.*;
+import org.racetrack.track.*;
+
+/**
+ * Data of the map rule depending only on the map: the tile bitsets, the move tables, the caches of the off track and
+ * on road checks and the angle of the finishline. The data of the most recently used maps is kept, so the rules of
+ * all games and turns on a map share it instead of calculating it again.
+ */
+final class MapRuleData {
+
+  private static final int MAX_MAPS = 16;
+
+  private static MapCache<MapRuleData> cache = new MapCache<>(MAX_MAPS);
+
+  /**
+   * Returns the data of the map, which is created by the factory if the map is not cached or its tiles have changed
+   */
+  static MapRuleData get(KaroMap map, Supplier<MapRuleData> factory) {
+    return cache.get(map, "rule", factory);
+  }
+
+  final TileMasks masks;
+  final MoveTable moves;
+  final ConcurrentLongBooleanCache offTrack;
+  final ConcurrentLongBooleanCache onRoad;
+  final FinishLineAngle finishAngle;
+  final int startFinishDist;
+
+  MapRuleData(TileMasks masks, MoveTable moves, ConcurrentLongBooleanCache offTrack, ConcurrentLongBooleanCache onRoad,
+      FinishLineAngle finishAngle, int startFinishDist) {
+    this.masks = masks;
+    this.moves = moves;
+    this.offTrack = offTrack;
+    this.onRoad = onRoad;
+    this.finishAngle = finishAngle;
+    this.startFinishDist = startFinishDist;
+  }
+
+}
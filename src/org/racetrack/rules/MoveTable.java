@@ -0,0 +1,147 @@
+package org.racetrack.rules;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.*;
+import java.util.logging.*;
+
+import org.racetrack.karoapi.*;
+import org.racetrack.track.*;
+
+/**
+ * Dense bit tables of all moves on a map with a speed up to {@link #MAX_SPEED}, indexed by position and velocity: one
+ * for the moves staying on track, one for the moves crossing no checkpoint and no finishline and one for the moves
+ * crossing the finishline. Checking a move is a single bit lookup then.
+ *
+ * The tables are kept with the data of the map rule (see {@link MapRuleData}), so all games on a map share them. They
+ * are persisted as memory mapped file <code>mapsettings/&lt;id&gt;.moves</code>, so after a restart they are read from
+ * there. The file is calculated again if the tiles of the map have changed.
+ */
+final class MoveTable {
+
+  static final int MAX_SPEED = 15;
+
+  static final int ON_TRACK = 0;
+  static final int ON_ROAD = 1;
+  static final int FINISH = 2;
+
+  private static final Logger logger = Logger.getLogger(MoveTable.class.toString());
+
+  private static final String SUFFIX = ".moves";
+  private static final int MAGIC = 0x4d4f5631;
+  // magic number, columns, rows and hash of the tiles
+  private static final int HEADER_BYTES = 16;
+  private static final int TABLES = 3;
+  private static final int WIDTH = 2 * MAX_SPEED + 1;
+  private static final long MAX_STATES = 1L << 26;
+
+  /**
+   * Check of a single move
+   */
+  private interface Check {
+    boolean test(int x, int y, int xv, int yv);
+  }
+
+  /**
+   * Returns the tables of the map, which are read from their file or calculated from the tiles. Returns null for maps
+   * without id (e.g. created from code) and for maps with too many states.
+   */
+  static MoveTable get(KaroMap map, TileMasks masks) {
+    if (map.getId() <= 0 || (long) map.getCols() * map.getRows() * WIDTH * WIDTH > MAX_STATES)
+      return null;
+    return new MoveTable(map, masks);
+  }
+
+  private int cols;
+  private int rows;
+  private int words;
+  private LongBuffer bits;
+
+  /**
+   * Reads or calculates the tables of the map, only the tables of maps with id are persisted
+   */
+  MoveTable(KaroMap map, TileMasks masks) {
+    cols = map.getCols();
+    rows = map.getRows();
+    int hash = MapCache.getTileHash(map);
+    words = (int) ((long) cols * rows * WIDTH * WIDTH >>> 6) + 1;
+    int size = HEADER_BYTES + TABLES * words * Long.BYTES;
+
+    File dir = MapCache.getDir();
+    File file = map.getId() > 0 && dir != null && dir.exists() ? new File(dir, map.getId() + SUFFIX) : null;
+    if (file != null && file.length() == size) {
+      try (FileChannel channel = FileChannel.open(file.toPath())) {
+        ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+        if (buffer.getInt() == MAGIC && buffer.getInt() == cols && buffer.getInt() == rows && buffer.getInt() == hash) {
+          bits = buffer.asLongBuffer();
+          return;
+        }
+      } catch (IOException e) {
+        logger.warning("Moves of map " + map.getId() + " not read: " + e.getMessage());
+      }
+    }
+
+    long duration = System.currentTimeMillis();
+    ByteBuffer buffer = null;
+    if (file != null) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(size);
+        buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+      } catch (IOException e) {
+        logger.warning("Moves of map " + map.getId() + " not saved: " + e.getMessage());
+      }
+    }
+    if (buffer == null) {
+      buffer = ByteBuffer.allocate(size);
+    }
+    buffer.putInt(0);
+    buffer.putInt(cols).putInt(rows).putInt(hash);
+    bits = buffer.asLongBuffer();
+    calculate(new Check[] { (x, y, xv, yv) -> !masks.isDrivenAcross(x, y, xv, yv, masks.offTrack(), false),
+        (x, y, xv, yv) -> !masks.isDrivenAcross(x, y, xv, yv, masks.cpOrFinish(), false),
+        (x, y, xv, yv) -> masks.isDrivenAcross(x, y, xv, yv, masks.of(MapTile.FINISH), false) });
+    // the file is valid only after all tables are written
+    buffer.putInt(0, MAGIC);
+    if (buffer instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) buffer).force();
+    }
+    logger.fine("Moves of map " + map.getId() + " calculated in " + (System.currentTimeMillis() - duration) + "ms");
+  }
+
+  private void calculate(Check[] checks) {
+    for (int table = 0; table < TABLES; table++) {
+      long word = 0;
+      int index = 0;
+      for (int y = 0; y < rows; y++) {
+        for (int x = 0; x < cols; x++) {
+          for (int yv = -MAX_SPEED; yv <= MAX_SPEED; yv++) {
+            for (int xv = -MAX_SPEED; xv <= MAX_SPEED; xv++, index++) {
+              if (checks[table].test(x, y, xv, yv)) {
+                word |= 1L << index;
+              }
+              if ((index & 63) == 63) {
+                bits.put(table * words + (index >>> 6), word);
+                word = 0;
+              }
+            }
+          }
+        }
+      }
+      bits.put(table * words + (index >>> 6), word);
+    }
+  }
+
+  /**
+   * Checks if the move is covered by the tables
+   */
+  boolean contains(int x, int y, int xv, int yv) {
+    return x >= 0 && x < cols && y >= 0 && y < rows && Math.abs(xv) <= MAX_SPEED && Math.abs(yv) <= MAX_SPEED;
+  }
+
+  boolean is(int table, int x, int y, int xv, int yv) {
+    int index = ((y * cols + x) * WIDTH + yv + MAX_SPEED) * WIDTH + xv + MAX_SPEED;
+    return (bits.get(table * words + (index >>> 6)) & (1L << index)) != 0;
+  }
+
+}
@@ -0,0 +1,92 @@
+package org.racetrack.rules;
+
+import org.racetrack.karoapi.*;
+
+/**
+ * Bitsets of the cells of a map belonging to a class of tiles, with the bit of a cell at y * cols + x. Crossing checks
+ * test bits instead of looking up tiles in collections. Cells outside of the map are off track.
+ */
+final class TileMasks {
+
+  private int cols;
+  private int rows;
+
+  private long[] offTrack;
+  private long[] cpOrFinish;
+  // cells of the tiles in the list of each tile (see MapTile#asList()), indexed by the ordinal of the tile
+  private long[][] tiles = new long[MapTile.values().length][];
+
+  TileMasks(KaroMap map) {
+    cols = map.getCols();
+    rows = map.getRows();
+    int size = (cols * rows + 63) >>> 6;
+    offTrack = new long[size];
+    cpOrFinish = new long[size];
+    for (MapTile tile : MapTile.values()) {
+      tiles[tile.ordinal()] = new long[size];
+    }
+
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0; x < cols; x++) {
+        MapTile tile = map.getTileOf(x, y);
+        int cell = y * cols + x;
+        if (MapTile.OFF_TRACK.contains(tile)) {
+          set(offTrack, cell);
+        }
+        if (MapTile.CP_AND_FINISH.contains(tile)) {
+          set(cpOrFinish, cell);
+        }
+        for (MapTile listed : MapTile.values()) {
+          if (listed.asList().contains(tile)) {
+            set(tiles[listed.ordinal()], cell);
+          }
+        }
+      }
+    }
+  }
+
+  private static void set(long[] mask, int cell) {
+    mask[cell >>> 6] |= 1L << cell;
+  }
+
+  long[] offTrack() {
+    return offTrack;
+  }
+
+  long[] cpOrFinish() {
+    return cpOrFinish;
+  }
+
+  long[] of(MapTile tile) {
+    return tiles[tile.ordinal()];
+  }
+
+  boolean isSet(long[] mask, int x, int y) {
+    if (x < 0 || x >= cols || y < 0 || y >= rows)
+      return mask == offTrack;
+    int cell = y * cols + x;
+    return (mask[cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  /**
+   * Checks the tiles crossed by the move from its end back to its start (see {@link LineOffsets}) against the bitset
+   * of a class of tiles.
+   *
+   * @param withCpRule
+   *          The Karopapier website only recognized a checkpoint as passed when driven over as last MapTile by the
+   *          move. When checking for crossing e.g. grass this behavior is undesired and the cpRule should be disabled
+   */
+  boolean isDrivenAcross(int x, int y, int xv, int yv, long[] mask, boolean withCpRule) {
+    int[] offsets = LineOffsets.get(xv, yv);
+    for (int i = 0; i < offsets.length; i += 2) {
+      int x0 = x + offsets[i];
+      int y0 = y + offsets[i + 1];
+      if (isSet(mask, x0, y0))
+        return true;
+      if (withCpRule && isSet(cpOrFinish, x0, y0))
+        return false;
+    }
+    return false;
+  }
+
+}
@@ -16,6 +16,11 @@ public class BrakeClampRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -36,7 +41,7 @@ public class BrakeClampRule extends GameRule {
     MutableCollection<Move> nextMoves = super.filterNextMv(move);
 
     if (nextMoves.anySatisfy(gameRule))
-      return nextMoves.select(gameRule);
+      return retain(nextMoves, gameRule);
     return nextMoves;
   }
 
@@ -12,6 +12,11 @@ public class CraZZZyRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public boolean hasForbidXdFinishline(Move move) {
     // ensure that at least one crash has happened
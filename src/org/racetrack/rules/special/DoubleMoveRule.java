@@ -17,6 +17,11 @@ public class DoubleMoveRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -37,7 +42,7 @@ public class DoubleMoveRule extends GameRule {
     MutableCollection<Move> nextMoves = super.filterNextMv(move);
 
     if (nextMoves.anySatisfy(gameRule))
-      return nextMoves.select(gameRule);
+      return retain(nextMoves, gameRule);
     return nextMoves;
   }
 
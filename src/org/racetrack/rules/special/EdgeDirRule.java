@@ -17,6 +17,11 @@ public class EdgeDirRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -34,7 +39,7 @@ public class EdgeDirRule extends GameRule {
 
   @Override
   public MutableCollection<Move> filterNextMv(Move move) {
-    return super.filterNextMv(move).select(gameRule);
+    return retain(super.filterNextMv(move), gameRule);
   }
 
 }
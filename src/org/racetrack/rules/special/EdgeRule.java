@@ -16,6 +16,11 @@ public class EdgeRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -33,7 +38,7 @@ public class EdgeRule extends GameRule {
 
   @Override
   public MutableCollection<Move> filterNextMv(Move move) {
-    return super.filterNextMv(move).select(gameRule);
+    return retain(super.filterNextMv(move), gameRule);
   }
 
 }
@@ -23,6 +23,11 @@ public class PrimeAccRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -43,7 +48,7 @@ public class PrimeAccRule extends GameRule {
     MutableCollection<Move> nextMoves = super.filterNextMv(move);
 
     if (nextMoves.anySatisfy(gameRule))
-      return nextMoves.select(gameRule);
+      return retain(nextMoves, gameRule);
     return nextMoves;
   }
 
@@ -1,12 +1,11 @@
 package org.racetrack.rules.special;
 
-import java.util.concurrent.locks.*;
-
 import org.eclipse.collections.api.block.predicate.*;
 import org.eclipse.collections.api.collection.*;
 import org.eclipse.collections.api.list.*;
 import org.eclipse.collections.api.map.primitive.*;
 import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.racetrack.collections.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.rules.*;
 import org.racetrack.track.*;
@@ -19,9 +18,9 @@ public class REmulAdeRule extends GameRule {
   private static final float MAX_SAFE_VALUE = 3f;
   private static final float RE_COOLDOWN = 0.45f;
   private static final float SINGLE_MOVE_RE_COOLDOWN = 0.5f;
+  private static final float BEING_RATED = -1f;
 
-  private final ReadWriteLock reSafeLock = new SeqLock(false);
-  private MutableIntFloatMap reSafeCount = new IntFloatHashMap(2 << 20);
+  private ConcurrentLongFloatCache reSafeCount = new ConcurrentLongFloatCache(2 << 20);
 
   private Predicate<Move> isRepeat = move -> move.isRepeat();
   private Predicate<Move> isReSafe = move -> isReSafe(move) > 1.3f;
@@ -30,6 +29,11 @@ public class REmulAdeRule extends GameRule {
     super(game);
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     MutableCollection<Move> nextMoves = super.filterPossibles(possibles).getEndMoves();
@@ -63,9 +67,7 @@ public class REmulAdeRule extends GameRule {
     MutableCollection<Move> nextMoves = super.filterNextMv(move);
 
     if (nextMoves.isEmpty()) {
-      reSafeLock.writeLock().lock();
       reSafeCount.put(move.hashCode(), 0f);
-      reSafeLock.writeLock().unlock();
       return nextMoves;
     }
 
@@ -73,47 +75,50 @@ public class REmulAdeRule extends GameRule {
   }
 
   private float isReSafe(Move move) {
+    return isReSafe(move, new IntFloatHashMap());
+  }
+
+  /**
+   * The moves rated by this call are kept in a map of their own, as the shared cache may drop entries. A move still
+   * being rated closes a cycle of moves, which ends the recursion.
+   */
+  private float isReSafe(Move move, MutableIntFloatMap rated) {
     int key = move.hashCode();
-    SeqLock.SeqReadLock lock = (SeqLock.SeqReadLock) reSafeLock.readLock();
-    try {
-      while (true) {
-        long counter = lock.tryReadLock();
-        float isReSafe = reSafeCount.getOrThrow(key);
-        if (lock.retryReadLock(counter))
-          return isReSafe != -1 ? isReSafe : 1;
-      }
-    } catch (IllegalStateException ise) {
-      reSafeLock.writeLock().lock();
-      reSafeCount.put(key, -1f);
-      reSafeLock.writeLock().unlock();
-      float maxReSafe = 0f;
-      MutableCollection<Move> nextMoves = move.getNext().select(mapRule)
-          .toSortedList((s1, s2) -> (int) (s1.getSpeed() - s2.getSpeed()));
-      if (nextMoves.isEmpty()) {
-        maxReSafe = hasXdCp(move, MapTile.FINISH) ? MAX_SAFE_VALUE : 0f;
+    if (rated.containsKey(key)) {
+      float value = rated.get(key);
+      return value != BEING_RATED ? value : 1;
+    }
+    float cached = reSafeCount.getIfAbsent(key, Float.NaN);
+    if (!Float.isNaN(cached))
+      return cached;
+
+    rated.put(key, BEING_RATED);
+    float maxReSafe = 0f;
+    MutableCollection<Move> nextMoves = move.getNext().select(mapRule)
+        .toSortedList((s1, s2) -> (int) (s1.getSpeed() - s2.getSpeed()));
+    if (nextMoves.isEmpty()) {
+      maxReSafe = hasXdCp(move, MapTile.FINISH) ? MAX_SAFE_VALUE : 0f;
+    } else {
+      Move rePeat = nextMoves.detect(isRepeat);
+      if (rePeat != null) {
+        maxReSafe = isReSafe(rePeat, rated) + (rePeat.getTaxiSpeed() > 1 ? RE_COOLDOWN : SINGLE_MOVE_RE_COOLDOWN);
       } else {
-        Move rePeat = nextMoves.detect(isRepeat);
-        if (rePeat != null) {
-          maxReSafe = isReSafe(rePeat) + (rePeat.getTaxiSpeed() > 1 ? RE_COOLDOWN : SINGLE_MOVE_RE_COOLDOWN);
-        } else {
-          for (Move nextMove : nextMoves) {
-            float reSafe = isReSafe(nextMove);
-            if (reSafe > maxReSafe) {
-              maxReSafe = reSafe;
-            }
-            if (maxReSafe >= MAX_SAFE_VALUE) {
-              break;
-            }
+        for (Move nextMove : nextMoves) {
+          float reSafe = isReSafe(nextMove, rated);
+          if (reSafe > maxReSafe) {
+            maxReSafe = reSafe;
+          }
+          if (maxReSafe >= MAX_SAFE_VALUE) {
+            break;
           }
-          maxReSafe *= 1.5f;
         }
+        maxReSafe *= 1.5f;
       }
-      maxReSafe = Math.min(maxReSafe, MAX_SAFE_VALUE);
-      reSafeLock.writeLock().lock();
-      reSafeCount.put(key, maxReSafe);
-      reSafeLock.writeLock().unlock();
-      return maxReSafe;
     }
+    maxReSafe = Math.min(maxReSafe, MAX_SAFE_VALUE);
+    rated.put(key, maxReSafe);
+    reSafeCount.put(key, maxReSafe);
+    return maxReSafe;
   }
 
 }
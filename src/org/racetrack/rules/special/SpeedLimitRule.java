@@ -28,6 +28,11 @@ public class SpeedLimitRule extends GameRule {
     }
   }
 
+  @Override
+  public boolean isHistoryFree() {
+    return false;
+  }
+
   @Override
   public Paths filterPossibles(Paths possibles) {
     Paths filtered = super.filterPossibles(possibles);
@@ -45,7 +50,7 @@ public class SpeedLimitRule extends GameRule {
 
   @Override
   public MutableCollection<Move> filterNextMv(Move move) {
-    return super.filterNextMv(move).select(gameRule);
+    return retain(super.filterNextMv(move), gameRule);
   }
 
 }
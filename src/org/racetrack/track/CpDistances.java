@@ -0,0 +1,202 @@
+package org.racetrack.track;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import org.eclipse.collections.api.map.*;
+import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.racetrack.karoapi.*;
+import org.racetrack.rules.*;
+
+import com.github.openjson.*;
+
+/**
+ * Distances between all checkpoints (and the finishline) of a map, indexed by the ordinal of the {@link MapTile}. The
+ * distances depend on the direction the finishline may be crossed in and on crashs being allowed, so each map has a
+ * matrix for every such variant.
+ *
+ * The matrices are shared by all games on a map and persisted next to the map settings in
+ * <code>mapsettings/&lt;id&gt;.distances</code> together with the hash of the tiles, so they are calculated again if
+ * the map has changed. Games with special rules and maps without id (e.g. created from code) get their own matrix.
+ * Distances without a path found are not persisted, so they are searched again after a restart.
+ */
+public final class CpDistances {
+
+  public static final int UNKNOWN = -1;
+
+  private static final Logger logger = Logger.getLogger(CpDistances.class.toString());
+
+  private static final String SUFFIX = ".distances";
+  private static final String ID = "id";
+  private static final String HASH = "hash";
+  private static final String DISTANCES = "distances";
+
+  private static ConcurrentMutableMap<String, CpDistances> shared = new ConcurrentHashMap<>();
+  private static Set<Integer> loadedMaps = new HashSet<>();
+
+  /**
+   * Loads the distances of all maps, which have been persisted before
+   */
+  public static void loadAll() {
+    File settingsDir = MapCache.getDir();
+    if (settingsDir == null || !settingsDir.exists())
+      return;
+
+    File[] files = settingsDir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    for (File file : files) {
+      try {
+        load(Integer.valueOf(file.getName().substring(0, file.getName().length() - SUFFIX.length())), null);
+      } catch (NumberFormatException nfe) {
+        logger.warning("Not a map id: " + file.getName());
+      }
+    }
+  }
+
+  /**
+   * Returns the distances for the game, which are shared with all other games on the same map and with the same
+   * variant. Games with rules depending on the history of moves get distances of their own.
+   */
+  public static CpDistances get(Game game, GameRule rule) {
+    int mapId = game.getMap().getId();
+    if (!rule.isHistoryFree() || mapId <= 0)
+      return new CpDistances(mapId, null, 0);
+
+    int hash = MapCache.getTileHash(game.getMap());
+    load(mapId, hash);
+    String variant = rule.getFinishDirection().name() + (game.isCrashAllowed() ? "-zzz" + game.getZzz() : "");
+    String key = mapId + "/" + variant;
+    CpDistances distances = shared.getIfAbsentPut(key, () -> new CpDistances(mapId, variant, hash));
+    if (distances.hash != hash) {
+      // the tiles of the map have changed
+      distances = new CpDistances(mapId, variant, hash);
+      shared.put(key, distances);
+    }
+    return distances;
+  }
+
+  /**
+   * Loads the distances of the map, if they have been persisted for the given hash of the tiles. A hash of null
+   * accepts the distances of any tiles, they are checked against the map on access then.
+   */
+  private static synchronized void load(int mapId, Integer hash) {
+    File settingsDir = MapCache.getDir();
+    if (settingsDir == null || loadedMaps.contains(mapId))
+      return;
+    loadedMaps.add(mapId);
+
+    File file = new File(settingsDir, mapId + SUFFIX);
+    if (!file.exists())
+      return;
+
+    StringBuilder content = new StringBuilder();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+      String line = reader.readLine();
+      while (line != null) {
+        content.append(line);
+        line = reader.readLine();
+      }
+    } catch (IOException e) {
+      logger.severe("Error in file: " + file.getName());
+      return;
+    }
+
+    try {
+      JSONObject json = new JSONObject(content.toString());
+      if (!json.has(HASH) || (hash != null && json.getInt(HASH) != hash))
+        return;
+
+      JSONObject variants = json.getJSONObject(DISTANCES);
+      for (String variant : variants.keySet()) {
+        CpDistances distances = new CpDistances(mapId, variant, json.getInt(HASH));
+        JSONArray rows = variants.getJSONArray(variant);
+        for (int from = 0; from < rows.length() && from < distances.size; from++) {
+          JSONArray row = rows.getJSONArray(from);
+          for (int to = 0; to < row.length() && to < distances.size; to++) {
+            distances.distances.set(from * distances.size + to, row.getInt(to));
+          }
+        }
+        shared.put(mapId + "/" + variant, distances);
+      }
+    } catch (JSONException je) {
+      logger.warning("JSON parsing error in file \"" + file.getName() + "\" at " + je.getMessage());
+    }
+  }
+
+  private static synchronized void save(int mapId, int hash) {
+    File settingsDir = MapCache.getDir();
+    if (settingsDir == null || !settingsDir.exists())
+      return;
+
+    JSONObject variants = new JSONObject();
+    shared.forEachValue(distances -> {
+      if (distances.mapId == mapId && distances.hash == hash) {
+        JSONArray rows = new JSONArray();
+        for (int from = 0; from < distances.size; from++) {
+          JSONArray row = new JSONArray();
+          for (int to = 0; to < distances.size; to++) {
+            int distance = distances.distances.get(from * distances.size + to);
+            // no path found may be caused by a search running out of time
+            row.put(distance != Integer.MAX_VALUE ? distance : UNKNOWN);
+          }
+          rows.put(row);
+        }
+        variants.put(distances.variant, rows);
+      }
+    });
+    JSONObject json = new JSONObject();
+    json.put(ID, mapId);
+    json.put(HASH, hash);
+    json.put(DISTANCES, variants);
+
+    File file = new File(settingsDir, mapId + SUFFIX);
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+      writer.write(json.toString());
+    } catch (IOException e) {
+      logger.warning("Distances of map " + mapId + " not saved: " + e.getMessage());
+    }
+  }
+
+  private int mapId;
+  private String variant;
+  private int hash;
+  private int size = MapTile.values().length;
+  private AtomicIntegerArray distances = new AtomicIntegerArray(size * size);
+  private AtomicBoolean changed = new AtomicBoolean(false);
+
+  private CpDistances(int mapId, String variant, int hash) {
+    this.mapId = mapId;
+    this.variant = variant;
+    this.hash = hash;
+    for (int i = 0; i < distances.length(); i++) {
+      distances.set(i, UNKNOWN);
+    }
+  }
+
+  public int getDistance(MapTile from, MapTile to) {
+    return distances.get(from.ordinal() * size + to.ordinal());
+  }
+
+  /**
+   * Stores the distance for both directions. If a distance is already known, the shorter one is kept.
+   */
+  public void putDistance(MapTile from, MapTile to, int distance) {
+    for (int index : new int[] { from.ordinal() * size + to.ordinal(), to.ordinal() * size + from.ordinal() }) {
+      int known = distances.getAndAccumulate(index, distance, (x, y) -> x == UNKNOWN ? y : Math.min(x, y));
+      if (known == UNKNOWN || distance < known) {
+        changed.set(true);
+      }
+    }
+  }
+
+  /**
+   * Persists the distances of the map, if they are shared and new distances have been found
+   */
+  public void save() {
+    if (variant != null && changed.getAndSet(false)) {
+      save(mapId, hash);
+    }
+  }
+
+}
@@ -2,24 +2,41 @@ package org.racetrack.track;
 
 import java.util.*;
 
-import org.eclipse.collections.api.collection.*;
-import org.eclipse.collections.impl.list.mutable.*;
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.map.primitive.*;
+import org.eclipse.collections.api.set.*;
+import org.eclipse.collections.impl.factory.*;
+import org.eclipse.collections.impl.map.mutable.primitive.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.rules.*;
 
 public class CrashDetector {
 
-  private static final int CRASH_DETECTOR_DEPTH = 12;
+  static final int CRASH_DETECTOR_DEPTH = 12;
 
+  // bounds of the safe depth of a state: the depth a safe path is known for in the upper and the depth no safe path
+  // exists for in the lower 16 bits
+  private static final int NO_BOUNDS = 0xFFFF;
+
+  /**
+   * Checks if any predecessor of the move is a crash. The predecessors are visited once each, without collecting them
+   * level by level. As the walk over the levels did before, all predecessors are checked regardless of the depth.
+   */
   public static boolean hasCrashHappend(Move move, int maxDepth) {
-    int depth = Integer.min(move.getTotalLen(), maxDepth);
-    MutableCollection<Move> prevMoves = Paths.getCompleteLowerLevel(FastList.newListWith(move));
-    while (!prevMoves.isEmpty() || depth > 0) {
-      if (prevMoves.anySatisfy(previous -> previous.isCrash()))
-        return true;
+    if (move.isCrash())
+      return false;
 
-      depth--;
-      prevMoves = Paths.getCompleteLowerLevel(prevMoves);
+    MutableSet<Move> visited = Sets.mutable.empty();
+    MutableList<Move> stack = Lists.mutable.with(move);
+    while (!stack.isEmpty()) {
+      Move next = stack.remove(stack.size() - 1);
+      for (Move predecessor : next.getPreds()) {
+        if (predecessor.isCrash())
+          return true;
+        if (visited.add(predecessor)) {
+          stack.add(predecessor);
+        }
+      }
     }
     return false;
   }
@@ -27,40 +44,95 @@ public class CrashDetector {
   private MapRule rule;
   private int maxDepth = CRASH_DETECTOR_DEPTH;
   private Collection<Move> moves;
-  private Boolean crashAhead;
+  private MovesToGo movesToGo;
+  private volatile Boolean crashAhead;
+  private MutableLongIntMap safeDepths = new LongIntHashMap();
 
   public CrashDetector(MapRule rule, Collection<Move> moves) {
     this.rule = rule;
     this.moves = moves;
   }
 
+  public CrashDetector(MapRule rule, Collection<Move> moves, MovesToGo movesToGo) {
+    this(rule, moves);
+    this.movesToGo = movesToGo;
+  }
+
   public boolean isCrashAhead(Move move) {
     return isCrashAhead() && move.getPathLen() < maxDepth && !hasCrashHappend(move, maxDepth);
   }
 
+  /**
+   * Same as {@link #isCrashAhead(Move)} for packed states, which carry the information of an earlier crash as a flag
+   * instead of a chain of predecessors.
+   */
+  public boolean isCrashAhead(long state) {
+    return isCrashAhead() && MoveState.pathLen(state) < maxDepth && !MoveState.isCrashed(state);
+  }
+
   public boolean isCrashAhead() {
     if (crashAhead == null) {
-      for (Move move : moves) {
-        if (isPathSafe(move, maxDepth)) {
-          crashAhead = false;
-          return false;
+      synchronized (this) {
+        if (crashAhead == null) {
+          crashAhead = !isAnyPathSafe();
         }
       }
-      crashAhead = true;
     }
     return crashAhead.booleanValue();
   }
 
-  private boolean isPathSafe(Move move, int d) {
+  private boolean isAnyPathSafe() {
+    long[][] next = new long[maxDepth][MapRule.MAX_NEXT];
+    for (Move move : moves) {
+      if (isPathSafe(move.getX(), move.getY(), move.getXv(), move.getYv(), maxDepth, next))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Searches a path of the given depth without a crash. The successors of each depth are written into a buffer of its
+   * own, so no objects are created. A state with a safe path of some depth has safe paths of all lower depths as
+   * well, so the bounds of the safe depth of each visited state are kept and the state is searched only once for a
+   * depth.
+   */
+  private boolean isPathSafe(int x, int y, int xv, int yv, int d, long[][] next) {
     if (d == 0)
       return true;
-    else {
-      for (Move next : move.getNext().select(rule.filterMap())) {
-        if (isPathSafe(next, d - 1))
-          return true;
-      }
+    if (movesToGo != null && isFinishAhead(x, y, xv, yv, d))
+      return true;
+
+    long key = MoveState.key(x, y, xv, yv);
+    int bounds = safeDepths.getIfAbsent(key, NO_BOUNDS);
+    if (d <= bounds >>> 16)
+      return true;
+    if (d >= (bounds & NO_BOUNDS))
       return false;
+
+    boolean isSafe = false;
+    long[] buffer = next[d - 1];
+    int count = rule.getNext(x, y, xv, yv, buffer);
+    for (int i = 0; i < count && !isSafe; i++) {
+      long state = buffer[i];
+      isSafe = isPathSafe(MoveState.x(state), MoveState.y(state), MoveState.xv(state), MoveState.yv(state), d - 1, next);
+    }
+
+    // the bounds may have been changed by the search of the successors
+    bounds = safeDepths.getIfAbsent(key, NO_BOUNDS);
+    if (isSafe) {
+      safeDepths.put(key, Math.max(bounds >>> 16, d) << 16 | bounds & NO_BOUNDS);
+    } else {
+      safeDepths.put(key, bounds & ~NO_BOUNDS | Math.min(bounds & NO_BOUNDS, d));
     }
+    return isSafe;
+  }
+
+  /**
+   * A path to the finishline of at least the given length without a crash is a safe path as well
+   */
+  private boolean isFinishAhead(int x, int y, int xv, int yv, int d) {
+    int moves = movesToGo.get(MapTile.FINISH, x, y, xv, yv);
+    return moves != MovesToGo.UNREACHABLE && moves >= d;
   }
 
 }
@@ -2,37 +2,101 @@ package org.racetrack.track;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
 import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.list.primitive.*;
 import org.eclipse.collections.api.map.*;
+import org.eclipse.collections.api.map.primitive.*;
 import org.eclipse.collections.impl.factory.*;
 import org.eclipse.collections.impl.list.mutable.*;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.racetrack.collections.*;
+import org.racetrack.concurrent.*;
 import org.racetrack.config.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.track.Strategy.*;
 import org.racetrack.worker.*;
 
+/**
+ * Game tree search over the paths of the players in their compact form (see {@link PathDag}). The moves are the nodes
+ * of the paths, only the chosen move of the player is returned as move object.
+ */
 public class GTS implements Callable<GameAction> {
 
+  private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+  private static final long NO_MOVE = -1L;
+  private static final long NOT_MOVED = -2L;
+
+  /**
+   * Finalizer of SplitMix64, which turns a slot key combined with a packed move into a well distributed Zobrist key
+   * without the need of a table for every possible move
+   */
+  private static long mix(long key) {
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return key ^ (key >>> 31);
+  }
+
+  private static TranspositionTable<Evaluation> sharedEvaluations;
+
+  /**
+   * Returns the transposition table shared by the searches of all games, so the evaluations of a game are kept for its
+   * next turn. Its size is the memory cap of all searches.
+   */
+  private static synchronized TranspositionTable<Evaluation> getEvaluations() {
+    if (sharedEvaluations == null) {
+      sharedEvaluations = TranspositionTable.withMemory(Settings.getInstance().gtsTableSizeMb());
+    }
+    return sharedEvaluations;
+  }
+
   private Game game;
   private MutableList<Pair<Player, Integer>> playerLength = new FastList<>(0);
   private int round;
 
-  private MutableMap<Player, Paths> paths;
+  private MutableMap<Player, PathDag> paths;
+  private MutableList<Move> moves;
   private MutableList<Player> players;
-  private ConcurrentMutableMap<Integer, Evaluation> evaluations = new ConcurrentHashMap<>();
+  private MutableObjectIntMap<Player> slots = new ObjectIntHashMap<>();
+  private long[] zobristKeys;
+  private TranspositionTable<Evaluation> evaluations = getEvaluations();
+  // the game, the player to move and the players of the slots with their shortest lengths, which decide the strategy
+  private long[] context;
+  private long contextHash;
 
   private Strategy strategy;
   private final double maxStatesPerRound = Settings.getInstance().gtsMaxStatesPerRound();
   private MutableMap<Integer, Long> statesInRound = Maps.mutable.empty();
+  // with a deadline the search is deepened round by round until the time is over
+  private long deadline;
+  private int maxRound = Integer.MAX_VALUE;
+  private volatile boolean maxRoundReached;
+  // the tasks of the shared pool are not interrupted, so they are cancelled by this flag
+  private volatile boolean cancelled = false;
+
+  ForkJoinPool executor = ComputePool.get();
+
+  /**
+   * Creates a search of the moves of the round of the player to move, which are the moves of its paths (see
+   * {@link Paths#getMovesOfRound(int)})
+   */
+  public GTS(Game game, MutableMap<Player, PathDag> paths, MutableList<Move> moves, int round) {
+    this(game, paths, moves, round, Long.MAX_VALUE);
+  }
 
-  ForkJoinPool executor = new ForkJoinPool();
-
-  public GTS(Game game, MutableMap<Player, Paths> paths, int round) {
+  /**
+   * Creates an iterative deepening search, which returns the best move of the last completed depth at the deadline
+   * given in milliseconds
+   */
+  public GTS(Game game, MutableMap<Player, PathDag> paths, MutableList<Move> moves, int round, long deadline) {
     this.game = game;
     this.paths = paths;
+    this.moves = moves;
     this.round = round;
+    this.deadline = deadline;
   }
 
   @Override
@@ -40,40 +104,104 @@ public class GTS implements Callable<GameAction> {
     Player player = game.getNext();
 
     players = new FastList<>(paths.keySet());
+    Random random = new Random(ZOBRIST_SEED);
+    zobristKeys = new long[players.size()];
+    for (int slot = 0; slot < players.size(); slot++) {
+      slots.put(players.get(slot), slot);
+      zobristKeys[slot] = random.nextLong();
+    }
     for (Player pl : players) {
-      Paths path = paths.get(pl);
+      PathDag path = paths.get(pl);
       int len = !path.isEmpty() ? path.getMinTotalLength() : Integer.MIN_VALUE;
       playerLength.add(new Pair<Player, Integer>(pl, len));
     }
     strategy = Strategy.get(player, playerLength);
+    setContext(player);
 
-    Paths path = paths.get(player);
+    PathDag path = paths.get(player);
 
     calcStatesInRound();
-    ConsoleOutput.print(game.getId(), "Ratings:");
-    MutableMap<Evaluation, Move> moveRatings = Maps.mutable.empty();
-    final GameState startState = getStartState();
-    for (Move move : startState.getUnblocked(path.getMovesOfRound(round))) {
-      ForkJoinTask<Evaluation> task = null;
-      if (startState.getNotMoved(players).size() == 1) {
-        task = executor.submit(playNextRound(startState.add(player, move)));
-      } else {
-        task = executor.submit(() -> play(startState.add(player, move)));
+    GameState startState = getStartState();
+    // until a search has completed, the move with the most successors is the best one
+    MutableIntList startMoves = startState.getUnblocked(path, path.getNodesOfRound(round));
+    int bestMove = !startMoves.isEmpty() ? orderBySuccessors(path, round, startMoves).getFirst() : PathDag.NONE;
+    if (deadline == Long.MAX_VALUE) {
+      ConsoleOutput.print(game.getId(), "Ratings:");
+      int move = play(player, startState, bestMove);
+      if (move != PathDag.NONE) {
+        bestMove = move;
       }
-      Evaluation eval = task.fork().join();
-      System.out.print(" " + move + " " + eval);
-      moveRatings.put(eval, move);
+    } else {
+      for (int depth = 1;; depth++) {
+        maxRound = round + depth;
+        maxRoundReached = false;
+        ConsoleOutput.print(game.getId(), "Ratings with depth " + depth + ":");
+        try {
+          // the best move of the last depth is searched first, so its rating is the bound of the other moves
+          int move = play(player, startState, bestMove);
+          if (move != PathDag.NONE) {
+            bestMove = move;
+          }
+        } catch (CancellationException ce) {
+          ConsoleOutput.println(game.getId(), "Deadline reached with depth " + depth);
+          break;
+        }
+        // deeper searches can't change the result, if no state of the last round has been reached
+        if (!maxRoundReached) {
+          break;
+        }
+      }
+    }
+
+    cancelled = true;
+    Move move = bestMove != PathDag.NONE ? toMove(path, bestMove) : null;
+    ConsoleOutput.println(game.getId(), "Result: " + move + " with strategy : " + strategy);
+    return new GameAction(game, move, path.getMinLength() == 1, path.getComment());
+  }
+
+  /**
+   * Returns the move of the player to move for the node of the round, the nodes of a round are numbered in the order
+   * of its moves
+   */
+  private Move toMove(PathDag path, int node) {
+    return moves.get(node - path.getRoundStart(round));
+  }
+
+  /**
+   * The evaluations of the shared table are only valid for the same game and players, so they are part of the key of a
+   * state. The paths of a player are taken as unchanged as long as its shortest length is the same.
+   */
+  private void setContext(Player player) {
+    context = new long[players.size() + 2];
+    context[0] = game.getId();
+    context[1] = player.getId();
+    for (int slot = 0; slot < players.size(); slot++) {
+      PathDag path = paths.get(players.get(slot));
+      int len = !path.isEmpty() ? path.getMinTotalLength() : Integer.MIN_VALUE;
+      context[slot + 2] = (long) players.get(slot).getId() << 32 | (len & 0xFFFFFFFFL);
+    }
+    contextHash = 0;
+    for (long value : context) {
+      contextHash = mix(contextHash ^ value);
     }
+  }
+
+  private int play(Player player, GameState startState, int preferredMove) {
+    return strategy.isParanoid() ? playParanoid(player, startState, preferredMove) : playMaxN(player, startState);
+  }
+
+  private int playMaxN(Player player, GameState startState) {
+    PathDag path = paths.get(player);
+    boolean lastMover = startState.getNotMoved(players).size() == 1;
+    MutableObjectIntMap<Evaluation> moveRatings = playConcurrently(path,
+        startState.getUnblocked(path, path.getNodesOfRound(round)), move -> lastMover
+            ? playNextRound(startState.add(player, path, move)).invoke() : play(startState.add(player, path, move)));
     System.out.println("");
 
-    Comparator<Evaluation> maxSuccesorsFirst = (e1, e2) -> path.getSuccessors(round + 1, moveRatings.get(e2)).size()
-        - path.getSuccessors(round + 1, moveRatings.get(e1)).size();
+    Comparator<Evaluation> maxSuccesorsFirst = (e1, e2) -> path.countSuccessors(moveRatings.get(e2), round + 1)
+        - path.countSuccessors(moveRatings.get(e1), round + 1);
     MutableList<Evaluation> evals = new FastList<>(moveRatings.keySet()).sortThis(maxSuccesorsFirst);
-    Move bestMove = evals.isEmpty() ? null : moveRatings.get(strategy.evaluate(player, evals));
-
-    ConsoleOutput.println(game.getId(), "Result: " + bestMove + " with strategy : " + strategy);
-    Paths playerPath = paths.get(player);
-    return new GameAction(game, bestMove, playerPath.getMinLength() == 1, playerPath.getComment());
+    return evals.isEmpty() ? PathDag.NONE : moveRatings.get(strategy.evaluate(player, evals));
   }
 
   private Evaluation play(GameState state) {
@@ -81,25 +209,25 @@ public class GTS implements Callable<GameAction> {
     int round = state.getRound();
     MutableList<Player> notMovedPlayers = state.getNotMoved(players);
     for (Player pl : notMovedPlayers) {
-      Paths path = paths.get(pl);
-      MutableList<Move> roundMmoves = path.getMovesOfRound(round);
-      if (roundMmoves.isEmpty()) {
+      PathDag path = paths.get(pl);
+      if (path.countNodesOfRound(round) == 0) {
         // player has already finished the game or been blocked
         evals.add(play(state.add(pl)));
         continue;
       }
 
-      MutableList<Move> unblockedMoves = state
-          .getUnblocked(state.isStartState() ? roundMmoves : path.getSuccessors(round, state.getPrevMove(pl)));
+      MutableIntList unblockedMoves = state.getUnblocked(path,
+          state.isStartState() ? path.getNodesOfRound(round) : state.getSuccessors(pl, path));
       if (unblockedMoves.isEmpty()) {
         evals.add(strategy.block(pl,
             notMovedPlayers.size() == 1 ? playNextRound(state.add(pl)).fork().join() : play(state.add(pl))));
       } else if (notMovedPlayers.size() == 1) {
-        MutableList<RecursiveTask<Evaluation>> tasks = unblockedMoves.collect(m -> playNextRound(state.add(pl, m)));
+        MutableList<RecursiveTask<Evaluation>> tasks = unblockedMoves
+            .collect(m -> playNextRound(state.add(pl, path, m)));
         tasks.forEach(t -> t.fork());
         evals.add(strategy.evaluate(pl, tasks.collect(t -> t.join())));
       } else {
-        evals.add(strategy.evaluate(pl, unblockedMoves.collect(m -> play(state.add(pl, m)))));
+        evals.add(strategy.evaluate(pl, unblockedMoves.collect(m -> play(state.add(pl, path, m)))));
       }
     }
     return strategy.merge(evals);
@@ -113,18 +241,198 @@ public class GTS implements Callable<GameAction> {
       protected Evaluation compute() {
         if (state.isGameFinished())
           return strategy.gameEnd();
-        else if (statesInRound.get(state.getRound()) > maxStatesPerRound)
+        else if (isMaxDepth(state.getRound()))
           return strategy.maxDepth();
-        else
-          return evaluations.getIfAbsentPut(state.hashCode(), () -> play(state.nextRound()).normalize());
+        else {
+          long[] key = state.getKey();
+          Evaluation evaluation = evaluations.get(state.getHash(), key);
+          if (evaluation == null) {
+            evaluation = play(state.nextRound()).normalize();
+            // rounds near the start of the search have the largest subtrees, so they are kept first
+            evaluations.put(state.getHash(), key, round - state.getRound(), evaluation);
+          }
+          return evaluation;
+        }
       }
     };
   }
 
+  /**
+   * Evaluates the root moves concurrently and prints each rating as soon as it is completed
+   */
+  private MutableObjectIntMap<Evaluation> playConcurrently(PathDag path, MutableIntList moves,
+      IntFunction<Evaluation> search) {
+    CompletionService<Evaluation> completionService = new ExecutorCompletionService<>(executor);
+    MutableObjectIntMap<Future<Evaluation>> futures = new ObjectIntHashMap<>();
+    moves.forEach(move -> futures.put(completionService.submit(() -> search.apply(move)), move));
+
+    MutableObjectIntMap<Evaluation> moveRatings = new ObjectIntHashMap<>();
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        Future<Evaluation> future = completionService.take();
+        Evaluation eval = future.get();
+        int move = futures.get(future);
+        System.out.print(" " + toMove(path, move) + " " + eval);
+        moveRatings.put(eval, move);
+      }
+    } catch (InterruptedException e) {
+      cancelled = true;
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CancellationException)
+        throw (CancellationException) e.getCause();
+      cancelled = true;
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      // workers of the shared pool are not interrupted, the remaining tasks end by the cancel flag
+      futures.keysView().forEach(f -> f.cancel(false));
+    }
+    return moveRatings;
+  }
+
+  /**
+   * Chooses the move of the player by a paranoid search with alpha-beta pruning. The first move is searched alone,
+   * the others concurrently afterwards. Each search starts with the rating of the best move found so far as lower
+   * bound. The preferred move is searched first, if it is unblocked, otherwise the move with the most successors.
+   */
+  private int playParanoid(Player player, GameState startState, int preferredMove) {
+    PathDag path = paths.get(player);
+    MutableIntList orderedMoves = orderBySuccessors(path, round,
+        startState.getUnblocked(path, path.getNodesOfRound(round)));
+    int first = orderedMoves.contains(preferredMove) || orderedMoves.isEmpty() ? preferredMove
+        : orderedMoves.getFirst();
+    MutableIntList firstMove = new IntArrayList(1);
+    MutableIntList otherMoves = new IntArrayList();
+    orderedMoves.forEach(move -> (move == first ? firstMove : otherMoves).add(move));
+    AtomicReference<Pair<Integer, Evaluation>> bestMove = new AtomicReference<>();
+    IntFunction<Evaluation> search = move -> {
+      Pair<Integer, Evaluation> best = bestMove.get();
+      Evaluation eval = playParanoid(startState.add(player, path, move), best != null ? best.value : null, null);
+      // a cut off rating is never better than its bound, so only exact ratings replace the best move
+      bestMove.accumulateAndGet(new Pair<>(move, eval),
+          (prev, next) -> prev == null || strategy.compare(next.value, prev.value) > 0 ? next : prev);
+      return eval;
+    };
+    playConcurrently(path, firstMove, search);
+    playConcurrently(path, otherMoves, search);
+    System.out.println("");
+
+    Pair<Integer, Evaluation> best = bestMove.get();
+    return best != null ? best.key : PathDag.NONE;
+  }
+
+  /**
+   * Paranoid search: the players move one after another in the order of their slots and all opponents minimize the
+   * rating of the player. Moves with more successors are tried first, as they leave more options. The bounds are
+   * evaluations compared by the strategy, null means unbounded.
+   */
+  private Evaluation playParanoid(GameState state, Evaluation alpha, Evaluation beta) {
+    MutableList<Player> notMovedPlayers = state.getNotMoved(players);
+    if (notMovedPlayers.isEmpty())
+      return playNextRoundParanoid(state, alpha, beta);
+
+    int round = state.getRound();
+    Player pl = notMovedPlayers.getFirst();
+    PathDag path = paths.get(pl);
+    if (path.countNodesOfRound(round) == 0)
+      return playParanoid(state.add(pl), alpha, beta); // player has already finished the game or been blocked
+
+    MutableIntList unblockedMoves = state.getUnblocked(path,
+        state.isStartState() ? path.getNodesOfRound(round) : state.getSuccessors(pl, path));
+    if (unblockedMoves.isEmpty())
+      return strategy.block(pl, playParanoid(state.add(pl), null, null));
+
+    boolean maximize = strategy.isMaximizing(pl);
+    Evaluation best = null;
+    MutableIntList orderedMoves = orderBySuccessors(path, round, unblockedMoves);
+    for (int i = 0; i < orderedMoves.size(); i++) {
+      Evaluation eval = playParanoid(state.add(pl, path, orderedMoves.get(i)), alpha, beta);
+      if (maximize) {
+        if (best == null || strategy.compare(eval, best) > 0) {
+          best = eval;
+        }
+        if (alpha == null || strategy.compare(best, alpha) > 0) {
+          alpha = best;
+        }
+      } else {
+        if (best == null || strategy.compare(eval, best) < 0) {
+          best = eval;
+        }
+        if (beta == null || strategy.compare(best, beta) < 0) {
+          beta = best;
+        }
+      }
+      if (alpha != null && beta != null && strategy.compare(alpha, beta) >= 0) {
+        break;
+      }
+    }
+    return best;
+  }
+
+  private Evaluation playNextRoundParanoid(GameState state, Evaluation alpha, Evaluation beta) {
+    if (state.isGameFinished())
+      return strategy.gameEnd();
+    else if (isMaxDepth(state.getRound()))
+      return strategy.maxDepth();
+
+    long[] key = state.getKey();
+    Evaluation evaluation = evaluations.get(state.getHash(), key);
+    if (evaluation == null) {
+      evaluation = playParanoid(state.nextRound(), alpha, beta).normalize();
+      // a value outside of the bounds is only a bound itself
+      if ((alpha == null || strategy.compare(evaluation, alpha) > 0)
+          && (beta == null || strategy.compare(evaluation, beta) < 0)) {
+        evaluations.put(state.getHash(), key, round - state.getRound(), evaluation);
+      }
+    }
+    return evaluation;
+  }
+
+  /**
+   * Without a deadline the depth is limited by the count of states in a round, otherwise by the round of the current
+   * iteration. The search is cancelled at the deadline.
+   */
+  private boolean isMaxDepth(int round) {
+    if (cancelled)
+      throw new CancellationException("Game tree search cancelled");
+    else if (deadline == Long.MAX_VALUE)
+      return statesInRound.get(round) > maxStatesPerRound;
+    else if (System.currentTimeMillis() > deadline)
+      throw new CancellationException("Deadline of game tree search reached");
+    else if (round >= maxRound) {
+      maxRoundReached = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Orders the nodes by the count of their successors, most first. The negative count is packed above the node, so
+   * sorting the packed values orders the nodes.
+   */
+  private MutableIntList orderBySuccessors(PathDag path, int round, MutableIntList nodes) {
+    long[] packed = new long[nodes.size()];
+    for (int i = 0; i < packed.length; i++) {
+      int node = nodes.get(i);
+      packed[i] = (long) -path.countSuccessors(node, round + 1) << 32 | node;
+    }
+    Arrays.sort(packed);
+    MutableIntList ordered = new IntArrayList(packed.length);
+    for (long p : packed) {
+      ordered.add((int) p);
+    }
+    return ordered;
+  }
+
+  /**
+   * The moves the other players have made in the round are taken from the game, they are not on the paths if they
+   * left them
+   */
   private GameState getStartState() {
     GameState state = new GameState(round);
     for (Player pl : players.select(p -> p.hasMovedInRound(round))) {
-      state = state.add(pl, pl.getMotion());
+      Move motion = pl.getMotion();
+      state = state.add(pl, paths.get(pl).find(motion), MoveState.of(motion));
     }
     return state;
   }
@@ -133,14 +441,14 @@ public class GTS implements Callable<GameAction> {
     for (int i = game.getCurrentRound() - 1; i < 300; i++) {
       long nodeCount = 1;
       final int round = i;
-      for (Integer moveCount : players.collect(p -> paths.get(p).getMovesOfRound(round).size()).select(c -> c > 0)) {
+      for (Integer moveCount : players.collect(p -> paths.get(p).countNodesOfRound(round)).select(c -> c > 0)) {
         nodeCount *= moveCount;
       }
       statesInRound.put(i, nodeCount);
     }
   }
 
-  class Pair<K, V> {
+  static class Pair<K, V> {
 
     K key;
     V value;
@@ -166,33 +474,58 @@ public class GTS implements Callable<GameAction> {
 
   }
 
+  /**
+   * State of the game in a round with the move of each player indexed by the slot of the player. The moves are the
+   * nodes of the paths of the players and their packed states, a move off the paths has no node. A player has moved in
+   * a round even without a move, if blocked or already finished.
+   *
+   * The state is hashed incrementally by Zobrist keys: the keys of all moves made in the round are combined by xor,
+   * the key of a move is the packed move mixed with the key of the slot.
+   */
   private class GameState {
 
     private int round;
-    private Player player;
-    private Move move;
-    private GameState prev;
+    private int[] nodes;
+    private long[] states;
+    private boolean[] moved;
     private GameState lastRound;
+    private long hash;
 
     private GameState(int round) {
       this.round = round;
+      nodes = new int[players.size()];
+      Arrays.fill(nodes, PathDag.NONE);
+      states = new long[players.size()];
+      Arrays.fill(states, NO_MOVE);
+      moved = new boolean[players.size()];
+      hash = mix(round) ^ contextHash;
     }
 
-    private GameState(Player player, Move move, int round, GameState lastRound) {
-      this.player = player;
-      this.move = move;
-      this.round = round;
-      this.lastRound = lastRound;
+    private GameState(GameState state) {
+      round = state.round;
+      nodes = state.nodes.clone();
+      states = state.states.clone();
+      moved = state.moved.clone();
+      lastRound = state.lastRound;
+      hash = state.hash;
     }
 
-    private GameState add(Player player, Move move) {
-      GameState newState = new GameState(player, move, round, lastRound);
-      newState.prev = this;
+    private GameState add(Player player, int node, long state) {
+      int slot = slots.get(player);
+      GameState newState = new GameState(this);
+      newState.nodes[slot] = node;
+      newState.states[slot] = state != NO_MOVE ? MoveState.withoutCrash(state) : NO_MOVE;
+      newState.moved[slot] = true;
+      newState.hash ^= mix(zobristKeys[slot] ^ newState.states[slot]);
       return newState;
     }
 
+    private GameState add(Player player, PathDag path, int node) {
+      return add(player, node, path.getState(node));
+    }
+
     private GameState add(Player player) {
-      return add(player, null);
+      return add(player, PathDag.NONE, NO_MOVE);
     }
 
     private GameState nextRound() {
@@ -205,28 +538,53 @@ public class GTS implements Callable<GameAction> {
       return round;
     }
 
+    private long getHash() {
+      return hash;
+    }
+
+    /**
+     * Returns the complete key of the state, the context of the search, the maximal round of the search and the round
+     * followed by the packed move of each slot
+     */
+    private long[] getKey() {
+      long[] key = Arrays.copyOf(context, context.length + states.length + 1);
+      key[context.length] = (long) maxRound << 32 | round;
+      for (int slot = 0; slot < states.length; slot++) {
+        key[context.length + slot + 1] = moved[slot] ? states[slot] : NOT_MOVED;
+      }
+      return key;
+    }
+
     private boolean isStartState() {
       return lastRound == null;
     }
 
     private boolean hasMoved(Player player) {
-      return player.equals(this.player) || (prev != null && prev.hasMoved(player));
+      return moved[slots.get(player)];
     }
 
     private boolean hasMoved() {
-      return player != null && move != null || (prev != null && prev.hasMoved());
-    }
-
-    private boolean isTaken(Move move) {
-      return move.equalsPos(this.move) || (prev != null && prev.isTaken(move));
+      for (long state : states) {
+        if (state != NO_MOVE)
+          return true;
+      }
+      return false;
     }
 
-    private Move getMove(Player player) {
-      return player.equals(this.player) ? move : (prev != null ? prev.getMove(player) : null);
+    private boolean isTaken(long state) {
+      for (long taken : states) {
+        if (taken != NO_MOVE && MoveState.x(state) == MoveState.x(taken) && MoveState.y(state) == MoveState.y(taken))
+          return true;
+      }
+      return false;
     }
 
-    private Move getPrevMove(Player player) {
-      return lastRound != null ? lastRound.getMove(player) : null;
+    /**
+     * Returns the successors of the move of the player in the last round, none if the move is off the paths
+     */
+    private MutableIntList getSuccessors(Player player, PathDag path) {
+      int prevNode = lastRound != null ? lastRound.nodes[slots.get(player)] : PathDag.NONE;
+      return prevNode != PathDag.NONE ? path.getSuccessors(prevNode, round) : new IntArrayList(0);
     }
 
     private boolean isGameFinished() {
@@ -237,38 +595,34 @@ public class GTS implements Callable<GameAction> {
       return players.select(p -> (lastRound == null || lastRound.hasMoved(p)) && !hasMoved(p));
     }
 
-    private MutableList<Move> getUnblocked(MutableList<Move> moves) {
-      return moves.reject(m -> isTaken(m));
-    }
-
-    private MutableList<GameState> aslist() {
-      MutableList<GameState> prevs = prev != null ? prev.aslist() : new FastList<>();
-      return player != null ? prevs.with(this) : prevs;
+    private MutableIntList getUnblocked(PathDag path, MutableIntList nodes) {
+      return nodes.reject(n -> isTaken(path.getState(n)));
     }
 
     @Override
     public boolean equals(Object o) {
-      if (o == null)
+      if (!(o instanceof GameState))
         return false;
 
       GameState c = (GameState) o;
-      return (player.equals(c.player) && move.equals(c.move)) && (prev != null && prev.equals(c.prev));
+      return round == c.round && hash == c.hash && Arrays.equals(moved, c.moved) && Arrays.equals(states, c.states);
     }
 
     @Override
     public int hashCode() {
-      return toString().hashCode();
+      return (int) (hash ^ (hash >>> 32));
     }
 
     @Override
     public String toString() {
       StringBuilder sb = new StringBuilder();
-      for (GameState state : aslist().sortThis((s1, s2) -> (s1.player != null ? s1.player.getName() : "null")
-          .compareTo(s2.player != null ? s2.player.getName() : "null"))) {
-        if (sb.length() != 0) {
-          sb.append(" ");
+      for (int slot = 0; slot < players.size(); slot++) {
+        if (moved[slot]) {
+          if (sb.length() != 0) {
+            sb.append(" ");
+          }
+          sb.append(players.get(slot) + ":" + (states[slot] != NO_MOVE ? MoveState.toString(states[slot]) : null));
         }
-        sb.append(state.player + ":" + state.move);
       }
       return sb.toString();
     }
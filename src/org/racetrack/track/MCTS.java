@@ -0,0 +1,387 @@
+package org.racetrack.track;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.list.primitive.*;
+import org.eclipse.collections.api.map.*;
+import org.eclipse.collections.impl.factory.*;
+import org.eclipse.collections.impl.list.mutable.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.racetrack.concurrent.*;
+import org.racetrack.karoapi.*;
+import org.racetrack.track.GTS.*;
+import org.racetrack.track.Strategy.*;
+import org.racetrack.worker.*;
+
+/**
+ * Monte Carlo tree search as alternative to the game tree search for games with many players nearby. The players move
+ * one after another, starting with the player to move. Each playout follows random moves along the paths of the
+ * players until all of them have finished or been blocked. The players finishing first are rated best. Like the game
+ * tree search it works on the compact form of the paths (see {@link PathDag}).
+ *
+ * Every thread searches a tree of its own (root parallelization), the visits of the root moves are summed up.
+ */
+public class MCTS implements Callable<GameAction> {
+
+  private static final int MAX_PLAYOUTS = 200000;
+  private static final int NO_SLOT = -1;
+  private static final int NOT_FINISHED = Integer.MAX_VALUE;
+  private static final double EXPLORATION = Math.sqrt(2);
+
+  private Game game;
+  private int round;
+  private long deadline;
+
+  private MutableMap<Player, PathDag> paths;
+  private MutableList<Move> moves;
+  private MutableList<Player> players;
+  private Strategy strategy;
+
+  ForkJoinPool executor = ComputePool.get();
+
+  public MCTS(Game game, MutableMap<Player, PathDag> paths, MutableList<Move> moves, int round) {
+    this(game, paths, moves, round, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a search of the moves of the round of the player to move (see {@link Paths#getMovesOfRound(int)}), which
+   * returns the most visited move at the deadline given in milliseconds
+   */
+  public MCTS(Game game, MutableMap<Player, PathDag> paths, MutableList<Move> moves, int round, long deadline) {
+    this.game = game;
+    this.paths = paths;
+    this.moves = moves;
+    this.round = round;
+    this.deadline = deadline;
+  }
+
+  @Override
+  public GameAction call() {
+    Player player = game.getNext();
+    Race start = prepare(player);
+
+    int threads = ComputePool.getGameBudget();
+    MutableList<Callable<Node>> searches = Lists.mutable.empty();
+    for (int i = 0; i < threads; i++) {
+      searches.add(() -> search(start, MAX_PLAYOUTS / threads));
+    }
+
+    int[] nodes = null;
+    int[] visits = null;
+    float[] rewards = null;
+    try {
+      for (Future<Node> future : executor.invokeAll(searches)) {
+        Node root = future.get();
+        if (nodes == null) {
+          nodes = root.moves;
+          visits = new int[nodes.length];
+          rewards = new float[nodes.length];
+        }
+        for (int i = 0; i < root.expanded; i++) {
+          visits[i] += root.children[i].visits;
+          rewards[i] += root.children[i].rewards[0];
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+
+    Move bestMove = null;
+    if (nodes != null) {
+      ConsoleOutput.print(game.getId(), "Ratings:");
+      int best = 0;
+      for (int i = 0; i < nodes.length; i++) {
+        System.out.print(
+            " " + toMove(nodes[i]) + " " + (visits[i] > 0 ? rewards[i] / visits[i] : 0f) + "/" + visits[i]);
+        if (visits[i] > visits[best]) {
+          best = i;
+        }
+      }
+      System.out.println("");
+      bestMove = nodes.length > 0 ? toMove(nodes[best]) : null;
+    }
+
+    ConsoleOutput.println(game.getId(), "Result: " + bestMove + " with monte carlo tree search");
+    PathDag path = paths.get(player);
+    return new GameAction(game, bestMove, path.getMinLength() == 1, path.getComment());
+  }
+
+  /**
+   * Returns the move of the player to move for the node of the start round, the nodes of a round are numbered in the
+   * order of its moves
+   */
+  private Move toMove(int node) {
+    return moves.get(node - paths.get(players.getFirst()).getRoundStart(round));
+  }
+
+  /**
+   * Puts the player to move into the first slot and returns the race with the moves the other players have made in the
+   * current round
+   */
+  private Race prepare(Player player) {
+    players = new FastList<>(paths.keySet()).reject(p -> p.equals(player));
+    players.add(0, player);
+    MutableList<Pair<Player, Integer>> playerLength = players.collect(p -> {
+      PathDag path = paths.get(p);
+      return new Pair<>(p, !path.isEmpty() ? path.getMinTotalLength() : Integer.MIN_VALUE);
+    });
+    strategy = Strategy.get(player, playerLength);
+
+    Race start = new Race();
+    for (int slot = 1; slot < players.size(); slot++) {
+      Player pl = players.get(slot);
+      if (pl.hasMovedInRound(round)) {
+        // the move is taken from the game, it has no node if the player has left the paths
+        Move motion = pl.getMotion();
+        start.move(slot, paths.get(pl).find(motion), MoveState.of(motion));
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Runs a single search with the given count of playouts and returns the mean rating of the player to move for each
+   * of its moves
+   */
+  MutableMap<Move, Float> rate(int playouts) {
+    Node root = search(prepare(game.getNext()), playouts);
+    MutableMap<Move, Float> ratings = Maps.mutable.empty();
+    for (int i = 0; i < root.expanded; i++) {
+      Node child = root.children[i];
+      ratings.put(toMove(root.moves[i]), child.rewards[0] / child.visits);
+    }
+    return ratings;
+  }
+
+  private Node search(Race start, int maxPlayouts) {
+    Random random = ThreadLocalRandom.current();
+    Node root = new Node(new Race(start));
+    for (int i = 0; i < maxPlayouts && System.currentTimeMillis() < deadline; i++) {
+      playout(root, new Race(start), random);
+    }
+    return root;
+  }
+
+  /**
+   * Selects a path down the tree, adds a new node to the tree, plays randomly until the end of the race and updates
+   * the ratings of all visited nodes
+   */
+  private void playout(Node root, Race race, Random random) {
+    MutableList<Node> visited = Lists.mutable.with(root);
+    Node node = root;
+    while (node.slot != NO_SLOT && node.expanded == node.moves.length) {
+      int i = node.select();
+      race.move(node, i);
+      node = node.children[i];
+      visited.add(node);
+    }
+    if (node.slot != NO_SLOT) {
+      int i = node.expanded++;
+      race.move(node, i);
+      node = node.children[i] = new Node(race);
+      visited.add(node);
+    }
+
+    for (int slot = race.next(); slot != NO_SLOT; slot = race.next()) {
+      MutableIntList moves = race.getMoves(slot);
+      race.move(slot, moves.get(random.nextInt(moves.size())));
+    }
+
+    float[] rewards = race.getRewards();
+    for (Node n : visited) {
+      n.update(rewards);
+    }
+  }
+
+  /**
+   * Node of the search tree, where the player of the slot chooses a move, the moves are nodes of the paths
+   */
+  private class Node {
+
+    private int slot;
+    private int[] moves;
+    private Node[] children;
+    private int expanded = 0;
+    private int visits = 0;
+    private float[] rewards = new float[players.size()];
+
+    private Node(Race race) {
+      slot = race.next();
+      moves = slot != NO_SLOT ? race.getMoves(slot).toArray() : new int[0];
+      children = new Node[moves.length];
+    }
+
+    /**
+     * Returns the child with the highest upper confidence bound for the rating of the player to move
+     */
+    private int select() {
+      double logVisits = Math.log(visits);
+      int best = 0;
+      double bestBound = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < children.length; i++) {
+        Node child = children[i];
+        double bound = child.rewards[slot] / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+        if (bound > bestBound) {
+          bestBound = bound;
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    private void update(float[] playoutRewards) {
+      visits++;
+      for (int i = 0; i < rewards.length; i++) {
+        rewards[i] += playoutRewards[i];
+      }
+    }
+
+  }
+
+  /**
+   * State of a playout with the moves of the last and of the current round indexed by the slot of the player. The
+   * moves are the nodes of the paths, the positions of the current round are kept as packed states, as a move taken
+   * from the game has no node if it is off the paths.
+   */
+  private class Race {
+
+    private int round;
+    private int[] lastMoves;
+    private int[] moves;
+    private long[] states;
+    private boolean[] moved;
+    private boolean[] out;
+    private int[] finishRounds;
+
+    private Race() {
+      round = MCTS.this.round;
+      lastMoves = new int[players.size()];
+      Arrays.fill(lastMoves, PathDag.NONE);
+      moves = new int[players.size()];
+      Arrays.fill(moves, PathDag.NONE);
+      states = new long[players.size()];
+      moved = new boolean[players.size()];
+      out = new boolean[players.size()];
+      finishRounds = new int[players.size()];
+    }
+
+    private Race(Race race) {
+      round = race.round;
+      lastMoves = race.lastMoves.clone();
+      moves = race.moves.clone();
+      states = race.states.clone();
+      moved = race.moved.clone();
+      out = race.out.clone();
+      finishRounds = race.finishRounds.clone();
+    }
+
+    private void move(int slot, int node, long state) {
+      moves[slot] = node;
+      states[slot] = state;
+      moved[slot] = true;
+    }
+
+    private void move(int slot, int node) {
+      move(slot, node, paths.get(players.get(slot)).getState(node));
+    }
+
+    /**
+     * Moves the player of the node along the tree. The race is advanced to the player first, which starts the next
+     * round after the last player of a round has moved.
+     */
+    private void move(Node node, int i) {
+      if (next() != node.slot)
+        throw new IllegalStateException("Playout left the search tree at slot " + node.slot);
+      move(node.slot, node.moves[i]);
+    }
+
+    /**
+     * Returns the slot of the next player, who is able to move. Players without successors have finished, players
+     * with all successors taken are blocked. At the end of the round the next one is started.
+     */
+    private int next() {
+      while (true) {
+        boolean finished = true;
+        for (int slot = 0; slot < moves.length; slot++) {
+          if (out[slot]) {
+            continue;
+          }
+          finished = false;
+          if (moved[slot]) {
+            continue;
+          }
+
+          PathDag path = paths.get(players.get(slot));
+          MutableIntList successors = getSuccessors(slot);
+          if (successors.isEmpty()) {
+            out[slot] = true;
+            finishRounds[slot] = lastMoves[slot] != PathDag.NONE ? path.getTotalLen(lastMoves[slot]) : NOT_FINISHED;
+          } else if (successors.allSatisfy(n -> isTaken(path.getState(n)))) {
+            out[slot] = true;
+            finishRounds[slot] = NOT_FINISHED;
+          } else
+            return slot;
+        }
+        if (finished)
+          return NO_SLOT;
+
+        lastMoves = moves;
+        moves = new int[moves.length];
+        Arrays.fill(moves, PathDag.NONE);
+        states = new long[moves.length];
+        moved = new boolean[moves.length];
+        round++;
+      }
+    }
+
+    private MutableIntList getSuccessors(int slot) {
+      PathDag path = paths.get(players.get(slot));
+      if (round == MCTS.this.round)
+        return path.getNodesOfRound(round);
+      return lastMoves[slot] != PathDag.NONE ? path.getSuccessors(lastMoves[slot], round) : new IntArrayList(0);
+    }
+
+    private MutableIntList getMoves(int slot) {
+      PathDag path = paths.get(players.get(slot));
+      return getSuccessors(slot).reject(n -> isTaken(path.getState(n)));
+    }
+
+    private boolean isTaken(long state) {
+      for (int slot = 0; slot < states.length; slot++) {
+        if (moved[slot] && MoveState.x(states[slot]) == MoveState.x(state)
+            && MoveState.y(states[slot]) == MoveState.y(state))
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * Returns the ratings of the players indexed by slot, the players finishing first are rated best
+     */
+    private float[] getRewards() {
+      int firstRound = NOT_FINISHED;
+      for (int finishRound : finishRounds) {
+        firstRound = Math.min(firstRound, finishRound);
+      }
+      Evaluation eval = strategy.gameEnd();
+      for (int slot = 0; slot < finishRounds.length; slot++) {
+        if (finishRounds[slot] == firstRound && firstRound != NOT_FINISHED) {
+          strategy.finish(players.get(slot), eval);
+        }
+      }
+      eval = eval.normalize();
+
+      float[] rewards = new float[players.size()];
+      for (int slot = 0; slot < rewards.length; slot++) {
+        rewards[slot] = strategy.getRating(players.get(slot), eval);
+      }
+      return rewards;
+    }
+
+  }
+
+}
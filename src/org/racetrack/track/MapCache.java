@@ -0,0 +1,124 @@
+package org.racetrack.track;
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+import org.racetrack.karoapi.*;
+
+/**
+ * Bounded cache of data calculated per map (and variant, e.g. a checkpoint), which keeps the data of the most recently
+ * used keys. The data of a key is calculated once without holding the lock of the cache, so lookups of other keys
+ * don't wait for it.
+ *
+ * Maps without id (e.g. created from code) can't be told apart, so their data is never cached. Cached data is
+ * calculated again if the tiles of the map have changed (see {@link #getTileHash(KaroMap)}).
+ */
+public final class MapCache<V> {
+
+  private static final Logger logger = Logger.getLogger(MapCache.class.toString());
+
+  /**
+   * Returns the directory next to the jar, in which the data of the maps is persisted, or null if it is not found
+   */
+  public static File getDir() {
+    CodeSource codeSource = MapCache.class.getProtectionDomain().getCodeSource();
+    try {
+      File jarFile = new File(codeSource.getLocation().toURI().getPath());
+      File jarDir = jarFile.getParentFile();
+      File settingsDir = new File(jarDir, "mapsettings/");
+      return settingsDir;
+    } catch (URISyntaxException | NullPointerException e) {
+      logger.severe("Mapsettings directory not found: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Returns a hash of all tiles of the map, which tells if the map has changed since data of it has been calculated
+   */
+  public static int getTileHash(KaroMap map) {
+    int hash = 1;
+    for (int y = 0; y < map.getRows(); y++) {
+      for (int x = 0; x < map.getCols(); x++) {
+        hash = 31 * hash + map.getTileOf(x, y).ordinal();
+      }
+    }
+    return hash;
+  }
+
+  private static class Cached<V> {
+    private final int hash;
+    private final FutureTask<V> data;
+
+    private Cached(int hash, Supplier<V> factory) {
+      this.hash = hash;
+      data = new FutureTask<>(factory::get);
+    }
+  }
+
+  private Map<String, Cached<V>> cache;
+
+  public MapCache(int maxSize) {
+    cache = new LinkedHashMap<String, Cached<V>>(maxSize, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the data of the map and variant, which is created by the factory if it is not cached. Lookups of the same
+   * key wait for the data to be created once.
+   */
+  public V get(KaroMap map, String variant, Supplier<V> factory) {
+    if (map.getId() <= 0)
+      return factory.get();
+
+    String key = map.getId() + "/" + variant;
+    int hash = getTileHash(map);
+    Cached<V> cached;
+    boolean created = false;
+    synchronized (cache) {
+      cached = cache.get(key);
+      if (cached == null || cached.hash != hash) {
+        cached = new Cached<>(hash, factory);
+        cache.put(key, cached);
+        created = true;
+      }
+    }
+    if (created) {
+      cached.data.run();
+    }
+
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return cached.data.get();
+        } catch (InterruptedException e) {
+          // the data is needed anyway, so the interrupt is only passed on
+          interrupted = true;
+        } catch (ExecutionException e) {
+          synchronized (cache) {
+            cache.remove(key, cached);
+          }
+          Throwable cause = e.getCause();
+          throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
@@ -5,6 +5,7 @@ import java.time.temporal.*;
 import java.util.concurrent.*;
 import java.util.logging.*;
 
+import org.eclipse.collections.api.*;
 import org.eclipse.collections.api.list.*;
 import org.eclipse.collections.api.map.*;
 import org.eclipse.collections.impl.factory.*;
@@ -19,6 +20,9 @@ public class MoveChooser extends ComparableTask<GameAction> {
 
   protected static final Logger logger = Logger.getLogger(MoveChooser.class.toString());
 
+  // time to return the paths found so far after the path finders are stopped
+  private static final long STOP_TIMEOUT_SECONDS = 10;
+
   private Game game;
   private Player player;
   private LocalDateTime executionEnd;
@@ -60,19 +64,18 @@ public class MoveChooser extends ComparableTask<GameAction> {
     long duration = System.currentTimeMillis();
     int round = game.getCurrentRound();
 
-    ExecutorService executor = Executors.newFixedThreadPool(Settings.getInstance().maxParallelTourThreads());
+    ExecutorService executor = ComputePool.getTaskExecutor();
     TSP tsp = new TSP(game, rule);
-    Future<Paths> playerPathsFuture = executor.submit(new PathFinder(game, player, rule, tsp));
+    PathFinder playerPathFinder = new PathFinder(game, player, rule, tsp);
+    Future<Paths> playerPathsFuture = executor.submit(playerPathFinder);
     try {
-      paths.put(player, playerPathsFuture.get(timeLeftForExecutionSeconds(), TimeUnit.SECONDS));
+      paths.put(player, getPaths(playerPathFinder, playerPathsFuture));
     } catch (ExecutionException e) {
       logger.warning(e.getMessage());
       return GameAction.skipGame(game, "Exception when executing path finder. " + e.getMessage());
     } catch (TimeoutException | InterruptedException e) {
       playerPathsFuture.cancel(true);
       return GameAction.skipGame(game, "Timeout or interrupt when getting path finder results.");
-    } finally {
-      executor.shutdownNow();
     }
     Paths playerPaths = paths.get(player);
     if (playerPaths.isEmpty())
@@ -99,26 +102,39 @@ public class MoveChooser extends ComparableTask<GameAction> {
             : Lists.mutable.empty());
 
     if (opponents.isEmpty()) {
-      Move maxSucc = playerMoves.max((o1, o2) -> playerPaths.getSuccessors(round + 1, o1).size()
-          - playerPaths.getSuccessors(round + 1, o2).size());
+      Move maxSucc = playerMoves.max((o1, o2) -> playerPaths.countSuccessors(round + 1, o1)
+          - playerPaths.countSuccessors(round + 1, o2));
       ConsoleOutput.println(game.getId(), "Result: " + maxSucc + " with only one player. Duration "
           + ((System.currentTimeMillis() - duration) / 1000) + "s");
       return new GameAction(game, maxSucc, playerPaths.getMinLength() == 1, playerPaths.getComment());
     } else {
-      executor = Executors.newFixedThreadPool(Settings.getInstance().maxParallelTourThreads());
-      CompletionService<Paths> completionService = new ExecutorCompletionService<>(executor);
+      // the path finders of the opponents share the budget of the game
+      Semaphore budget = new Semaphore(ComputePool.getGameBudget());
       MutableMap<Player, Future<Paths>> futurePaths = Maps.mutable.empty();
+      MutableList<PathFinder> pathFinders = Lists.mutable.empty();
       for (Player pl : opponents) {
-        futurePaths.put(pl, completionService.submit(new PathFinder(game, pl, rule, tsp)));
+        PathFinder pathFinder = new PathFinder(game, pl, rule, tsp);
+        pathFinders.add(pathFinder);
+        futurePaths.put(pl, executor.submit(() -> {
+          budget.acquire();
+          try {
+            // a path finder stopped while waiting for the budget doesn't start to solve the tours
+            return pathFinder.isStopped() ? Paths.empty() : pathFinder.call();
+          } finally {
+            budget.release();
+          }
+        }));
       }
 
-      executor.shutdown();
       try {
-        if (!executor.awaitTermination(timeLeftForExecutionSeconds(), TimeUnit.SECONDS)) {
-          executor.shutdownNow();
+        if (!awaitAll(futurePaths.valuesView(), timeLeftForPathsSeconds())) {
+          pathFinders.forEach(PathFinder::stop);
+          if (!awaitAll(futurePaths.valuesView(), STOP_TIMEOUT_SECONDS)) {
+            futurePaths.forEachValue(future -> future.cancel(true));
+          }
         }
       } catch (InterruptedException ie) {
-        executor.shutdownNow();
+        futurePaths.forEachValue(future -> future.cancel(true));
         return GameAction.skipGame(game, "MoveChooser interrupted");
       }
       for (Player pl : futurePaths.keySet()) {
@@ -128,14 +144,31 @@ public class MoveChooser extends ComparableTask<GameAction> {
         } catch (ExecutionException e) {
           logger.warning(e.getMessage());
           return GameAction.skipGame(game, "Exception when executing path finder");
+        } catch (CancellationException e) {
+          // the search goes on without the opponent, whose path finder has not stopped in time
+          ConsoleOutput.println(game.getId(), "No paths of " + pl.getName() + " in time, the opponent is ignored.");
         } catch (InterruptedException e) {
           return GameAction.skipGame(game, "Timeout when getting path finder results");
         }
       }
     }
 
-    executor = Executors.newFixedThreadPool(1);
-    Future<GameAction> action = executor.submit(new GTS(game, paths, round));
+    // the searches only need the compact form of the paths and the moves of the player to be played
+    MutableMap<Player, PathDag> dags = paths.collectValues((pl, path) -> PathDag.of(path));
+    paths.clear();
+
+    // leave a tenth of the time to return the best move before the search is cancelled
+    long deadline = System.currentTimeMillis() + timeLeftForExecutionSeconds() * 900;
+    int mctsMinOpponents = Settings.getInstance().mctsMinOpponents();
+    Callable<GameAction> search;
+    if (mctsMinOpponents > 0 && dags.size() - 1 >= mctsMinOpponents) {
+      search = new MCTS(game, dags, playerMoves, round, deadline);
+    } else if (Settings.getInstance().withGtsDeepening()) {
+      search = new GTS(game, dags, playerMoves, round, deadline);
+    } else {
+      search = new GTS(game, dags, playerMoves, round);
+    }
+    Future<GameAction> action = executor.submit(search);
     try {
       return action.get(timeLeftForExecutionSeconds(), TimeUnit.SECONDS);
     } catch (ExecutionException ee) {
@@ -144,11 +177,49 @@ public class MoveChooser extends ComparableTask<GameAction> {
       return GameAction.skipGame(game, "Timeout during game tree search.");
     } finally {
       action.cancel(true);
-      executor.shutdownNow();
       ConsoleOutput.println(game.getId(), ((System.currentTimeMillis() - duration) / 1000) + "s to calculate.");
     }
   }
 
+  /**
+   * Waits for the paths until the time for path finding is over. Then the path finder is stopped and returns the paths
+   * found so far, as a slightly worse move is better than a skipped game.
+   */
+  private Paths getPaths(PathFinder pathFinder, Future<Paths> future)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    try {
+      return future.get(timeLeftForPathsSeconds(), TimeUnit.SECONDS);
+    } catch (TimeoutException te) {
+      pathFinder.stop();
+      return future.get(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Waits until all futures are done or the timeout in seconds is over, returns false on timeout
+   */
+  private boolean awaitAll(RichIterable<Future<Paths>> futures, long timeoutSeconds) throws InterruptedException {
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    for (Future<Paths> future : futures) {
+      try {
+        future.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException te) {
+        return false;
+      } catch (ExecutionException | CancellationException e) {
+        // the future is done, its failure is handled when the paths are collected
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the time left for path finding, a fifth of the execution time is kept for the game tree search
+   */
+  private long timeLeftForPathsSeconds() {
+    long timeLeft = timeLeftForExecutionSeconds() - maxExecutionTimeMinutes * 60 / 5;
+    return timeLeft > 0 ? timeLeft : 0l;
+  }
+
   private long timeLeftForExecutionSeconds() {
     long timeLeft = ChronoUnit.SECONDS.between(LocalDateTime.now(), executionEnd);
     return timeLeft > 0 ? timeLeft : 0l;
@@ -0,0 +1,101 @@
+package org.racetrack.track;
+
+import org.racetrack.karoapi.*;
+
+/**
+ * Packs the state of a move into a single long, so that searches can keep their visited and frontier sets in
+ * primitive collections instead of holding a {@link Move} object for every state.
+ *
+ * Layout (from the lowest bit): x (12 bits), y (12 bits), xv (8 bits), yv (8 bits), path length (10 bits) and a flag
+ * telling whether a crash happened on the way to this state. Position and velocity form the key of a state.
+ */
+public final class MoveState {
+
+  public static final int MAX_PATH_LEN = (1 << 10) - 1;
+
+  private static final int Y_SHIFT = 12;
+  private static final int XV_SHIFT = 24;
+  private static final int YV_SHIFT = 32;
+  private static final int LEN_SHIFT = 40;
+  private static final int CRASH_SHIFT = 50;
+
+  private static final long POS_MASK = (1L << 12) - 1;
+  private static final long VELO_MASK = (1L << 8) - 1;
+  private static final long KEY_MASK = (1L << LEN_SHIFT) - 1;
+
+  public static long of(int x, int y, int xv, int yv, int pathLen) {
+    return key(x, y, xv, yv) | ((long) pathLen << LEN_SHIFT);
+  }
+
+  /**
+   * Returns the state of a key (see {@link #key(int, int, int, int)}) with the path length
+   */
+  public static long of(long key, int pathLen) {
+    return key | ((long) pathLen << LEN_SHIFT);
+  }
+
+  public static long of(Move move) {
+    return of(move.getX(), move.getY(), move.getXv(), move.getYv(), move.getPathLen());
+  }
+
+  /**
+   * Returns the key of a state, which is the position and the velocity without path length and crash flag
+   */
+  public static long key(int x, int y, int xv, int yv) {
+    return (x & POS_MASK) | ((y & POS_MASK) << Y_SHIFT) | ((xv & VELO_MASK) << XV_SHIFT)
+        | ((yv & VELO_MASK) << YV_SHIFT);
+  }
+
+  public static long key(Move move) {
+    return key(move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+  public static long key(long state) {
+    return state & KEY_MASK;
+  }
+
+  public static int x(long state) {
+    return (int) (state & POS_MASK);
+  }
+
+  public static int y(long state) {
+    return (int) ((state >>> Y_SHIFT) & POS_MASK);
+  }
+
+  public static int xv(long state) {
+    return (byte) (state >>> XV_SHIFT);
+  }
+
+  public static int yv(long state) {
+    return (byte) (state >>> YV_SHIFT);
+  }
+
+  public static int pathLen(long state) {
+    return (int) ((state >>> LEN_SHIFT) & MAX_PATH_LEN);
+  }
+
+  public static boolean isCrashed(long state) {
+    return ((state >>> CRASH_SHIFT) & 1L) != 0;
+  }
+
+  public static long withCrash(long state) {
+    return state | (1L << CRASH_SHIFT);
+  }
+
+  public static long withoutCrash(long state) {
+    return state & ~(1L << CRASH_SHIFT);
+  }
+
+  public static boolean equalsState(long state, Move move) {
+    return key(state) == key(move) && pathLen(state) == move.getPathLen();
+  }
+
+  public static String toString(long state) {
+    return "[" + x(state) + "," + y(state) + "/" + xv(state) + "," + yv(state) + " " + pathLen(state)
+        + (isCrashed(state) ? " crash" : "") + "]";
+  }
+
+  private MoveState() {
+  }
+
+}
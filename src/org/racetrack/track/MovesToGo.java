@@ -0,0 +1,258 @@
+package org.racetrack.track;
+
+import java.util.*;
+import java.util.logging.*;
+
+import org.eclipse.collections.api.list.primitive.*;
+import org.eclipse.collections.api.set.primitive.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.eclipse.collections.impl.set.mutable.primitive.*;
+import org.racetrack.karoapi.*;
+import org.racetrack.rules.*;
+
+/**
+ * Cost-to-go tables of a map: the number of moves still needed to cross each checkpoint and the finishline from every
+ * state (position and velocity) of the map. The tables are calculated once per map and finish direction by a reverse
+ * breadth first search from all states crossing the checkpoint, and shared by all games on that map. As they take up
+ * to some ten megabytes per map, only the tables of a few maps are kept.
+ *
+ * The values are exact for the rules of the map. Special game rules only remove moves, so for them the values are a
+ * lower bound. Crashs are not considered, states which need a crash to get on are {@link #UNREACHABLE}.
+ */
+public final class MovesToGo {
+
+  public static final int UNREACHABLE = TileDistance.UNREACHABLE;
+
+  private static final Logger logger = Logger.getLogger(MovesToGo.class.toString());
+
+  private static final int MAX_STATES = 1 << 22;
+  private static final int MAX_MOVES = 254;
+  private static final int NONE = 255;
+  private static final int MAX_MAPS = 4;
+
+  private static MapCache<MovesToGo> instances = new MapCache<>(MAX_MAPS);
+
+  /**
+   * Returns the tables for the map of the rule, which are calculated on first access. Returns null if the state space
+   * of the map is too large to be kept in memory.
+   */
+  public static MovesToGo get(GameRule rule) {
+    return instances.get(rule.getMap(), rule.getFinishDirection().name(), () -> {
+      long duration = System.currentTimeMillis();
+      MovesToGo movesToGo = new MovesToGo(rule);
+      logger.fine("Moves to go for map " + rule.getMap().getId() + "/" + rule.getFinishDirection() + " calculated in "
+          + (System.currentTimeMillis() - duration) + "ms");
+      return movesToGo.tables != null ? movesToGo : null;
+    });
+  }
+
+  private int cols;
+  private int rows;
+  private int maxSpeed;
+  private int width;
+  private long[] reachable;
+  private byte[][] tables;
+
+  private MovesToGo(GameRule rule) {
+    KaroMap map = rule.getMap();
+    cols = map.getCols();
+    rows = map.getRows();
+
+    MutableLongSet states = getReachableStates(rule);
+    if (states == null)
+      return;
+
+    maxSpeed = states.injectInto(0, (max, state) -> Math.max(max,
+        Math.max(Math.abs(MoveState.xv(state)), Math.abs(MoveState.yv(state)))));
+    width = 2 * maxSpeed + 1;
+    long size = (long) cols * rows * width * width;
+    if (size > MAX_STATES) {
+      logger.warning("Map " + map.getId() + " has too many states for moves to go tables: " + size);
+      return;
+    }
+
+    reachable = new long[(int) (size >>> 6) + 1];
+    states.each(state -> {
+      int index = getIndex(MoveState.x(state), MoveState.y(state), MoveState.xv(state), MoveState.yv(state));
+      reachable[index >>> 6] |= 1L << index;
+    });
+
+    long[] blocked = getForbiddenFinishCrossings(rule, (int) size);
+    tables = new byte[MapTile.values().length][];
+    for (MapTile cp : map.getCps()) {
+      tables[cp.ordinal()] = calculate(rule, cp, (int) size, blocked);
+    }
+    tables[MapTile.FINISH.ordinal()] = calculate(rule, MapTile.FINISH, (int) size, blocked);
+  }
+
+  /**
+   * Forward search from all tiles on track standing still, which covers starts as well as restarts after a crash
+   */
+  private MutableLongSet getReachableStates(MapRule rule) {
+    MutableLongSet visited = new LongHashSet(2 << 18);
+    MutableLongList queue = new LongArrayList(2 << 18);
+    for (int x = 0; x < cols; x++) {
+      for (int y = 0; y < rows; y++) {
+        if (rule.getMap().contains(x, y) && !MapTile.OFF_TRACK.contains(rule.getMap().getTileOf(x, y))) {
+          long state = MoveState.key(x, y, 0, 0);
+          visited.add(state);
+          queue.add(state);
+        }
+      }
+    }
+    for (int head = 0; head < queue.size(); head++) {
+      long state = queue.get(head);
+      int x = MoveState.x(state);
+      int y = MoveState.y(state);
+      for (int xv = MoveState.xv(state) - 1; xv <= MoveState.xv(state) + 1; xv++) {
+        for (int yv = MoveState.yv(state) - 1; yv <= MoveState.yv(state) + 1; yv++) {
+          long next = MoveState.key(x + xv, y + yv, xv, yv);
+          if (!visited.contains(next) && rule.isValidUncached(x + xv, y + yv, xv, yv)) {
+            visited.add(next);
+            queue.add(next);
+          }
+        }
+      }
+      if (visited.size() > MAX_STATES) {
+        logger.warning("Map " + rule.getMap().getId() + " has too many states for moves to go tables");
+        return null;
+      }
+    }
+    return visited;
+  }
+
+  /**
+   * Marks the moves crossing the finishline in the wrong direction. Searches don't continue from such moves.
+   */
+  private long[] getForbiddenFinishCrossings(GameRule rule, int size) {
+    long[] blocked = new long[reachable.length];
+    if (!rule.isMapCircuit())
+      return blocked;
+
+    TileDistance finish = TileDistance.get(rule.getMap(), MapTile.FINISH);
+    for (int index = 0; index < size; index++) {
+      if (isReachable(index)) {
+        int x = getX(index);
+        int y = getY(index);
+        int xv = getXv(index);
+        int yv = getYv(index);
+        if (finish.getDistance(x, y) <= Math.max(Math.abs(xv), Math.abs(yv))
+            && rule.hasForbidXdFinishline(x, y, xv, yv)) {
+          blocked[index >>> 6] |= 1L << index;
+        }
+      }
+    }
+    return blocked;
+  }
+
+  private byte[] calculate(GameRule rule, MapTile cp, int size, long[] blocked) {
+    byte[] table = new byte[size];
+    Arrays.fill(table, (byte) NONE);
+
+    TileDistance distance = TileDistance.get(rule.getMap(), cp);
+    MutableIntList queue = new IntArrayList();
+    for (int index = 0; index < size; index++) {
+      if (isReachable(index) && (blocked[index >>> 6] & (1L << index)) == 0) {
+        int x = getX(index);
+        int y = getY(index);
+        int xv = getXv(index);
+        int yv = getYv(index);
+        if (distance.getDistance(x, y) <= Math.max(Math.abs(xv), Math.abs(yv))
+            && rule.hasXdCp(x, y, xv, yv, cp)) {
+          table[index] = 0;
+          queue.add(index);
+        }
+      }
+    }
+
+    // reverse search: the predecessors of a move are at its start point and differ by one acceleration at most
+    for (int head = 0; head < queue.size(); head++) {
+      int index = queue.get(head);
+      int xv = getXv(index);
+      int yv = getYv(index);
+      if (xv == 0 && yv == 0) {
+        continue; // standing still is only reached by a start or a crash
+      }
+      int x = getX(index) - xv;
+      int y = getY(index) - yv;
+      int moves = Math.min((table[index] & 0xFF) + 1, MAX_MOVES);
+      for (int pxv = xv - 1; pxv <= xv + 1; pxv++) {
+        for (int pyv = yv - 1; pyv <= yv + 1; pyv++) {
+          int pred = getIndex(x, y, pxv, pyv);
+          if (pred >= 0 && isReachable(pred) && (table[pred] & 0xFF) == NONE
+              && (blocked[pred >>> 6] & (1L << pred)) == 0) {
+            table[pred] = (byte) moves;
+            queue.add(pred);
+          }
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Returns the number of moves after the given state needed to cross the checkpoint, 0 if the state itself crosses
+   * it.
+   */
+  public int get(MapTile cp, int x, int y, int xv, int yv) {
+    byte[] table = tables[cp.ordinal()];
+    int index = getIndex(x, y, xv, yv);
+    if (table == null || index < 0 || (table[index] & 0xFF) == NONE)
+      return UNREACHABLE;
+    return table[index] & 0xFF;
+  }
+
+  public int get(MapTile cp, Move move) {
+    return get(cp, move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+  /**
+   * Tells if the checkpoint can't be crossed from the state within the given path length. States with no way to the
+   * checkpoint without a crash are never beyond.
+   */
+  public boolean isBeyond(MapTile cp, int x, int y, int xv, int yv, int pathLen, int maxPathLen) {
+    int moves = get(cp, x, y, xv, yv);
+    return moves != UNREACHABLE && pathLen + moves > maxPathLen;
+  }
+
+  /**
+   * Returns the minimal path length of a move crossing the checkpoint, starting from one of the given moves
+   */
+  public int getMinPathLen(Collection<Move> starts, MapTile cp) {
+    int minPathLen = UNREACHABLE;
+    for (Move start : starts) {
+      int moves = get(cp, start);
+      if (moves != UNREACHABLE) {
+        minPathLen = Math.min(minPathLen, start.getPathLen() + moves);
+      }
+    }
+    return minPathLen;
+  }
+
+  private int getIndex(int x, int y, int xv, int yv) {
+    if (x < 0 || x >= cols || y < 0 || y >= rows || Math.abs(xv) > maxSpeed || Math.abs(yv) > maxSpeed)
+      return -1;
+    return ((y * cols + x) * width + yv + maxSpeed) * width + xv + maxSpeed;
+  }
+
+  private boolean isReachable(int index) {
+    return (reachable[index >>> 6] & (1L << index)) != 0;
+  }
+
+  private int getX(int index) {
+    return index / (width * width) % cols;
+  }
+
+  private int getY(int index) {
+    return index / (width * width) / cols;
+  }
+
+  private int getXv(int index) {
+    return index % width - maxSpeed;
+  }
+
+  private int getYv(int index) {
+    return index / width % width - maxSpeed;
+  }
+
+}
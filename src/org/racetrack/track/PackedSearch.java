@@ -0,0 +1,460 @@
+package org.racetrack.track;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+import org.eclipse.collections.api.collection.*;
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.list.primitive.*;
+import org.eclipse.collections.api.map.primitive.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.racetrack.karoapi.*;
+import org.racetrack.rules.*;
+
+/**
+ * Breadth first search to the next checkpoint on packed states (see {@link MoveState}). Visited states, the frontier
+ * and the edges between states are kept in primitive collections. Move objects are only created for the states on
+ * the resulting shortest paths, after the search has finished.
+ *
+ * The search yields the same paths as {@link PathFinder} on move objects, but can only be used for rules which are
+ * {@link GameRule#isHistoryFree() history free}. With A* enabled, states are expanded in the order of a
+ * {@link TileDistance} estimate, with {@link MovesToGo} given, states which can't reach the checkpoint in time are not
+ * expanded.
+ *
+ * Instead of a single checkpoint the search can also look for the shortest paths over all missing checkpoints to the
+ * finishline in one pass. A state then additionally holds the set of checkpoints still missing as a bitmask.
+ *
+ * When the search is stopped, it returns the paths to the goals found so far.
+ */
+class PackedSearch {
+
+  private static final int MASK_SHIFT = 40;
+
+  private Game game;
+  private GameRule rule;
+  private CrashDetector crashDetector;
+  private MovesToGo movesToGo;
+  private boolean withAStarSearch;
+  private boolean withMultiCrash;
+  private BooleanSupplier stopped;
+
+  // the target of the search followed by the checkpoints of the bitmask
+  private MapTile[] targets;
+  private TileDistance[] distances;
+
+  private MutableLongIntMap visited = new LongIntHashMap(2 << 18);
+  private long[] states = new long[2 << 12];
+  private int[] masks = new int[2 << 12];
+  private int[] estimates = new int[2 << 12];
+  private int nodeCount = 0;
+
+  // states are ordered by path length plus estimate, which is the path length only without A*
+  private MutableIntList[] buckets = new MutableIntList[MoveState.MAX_PATH_LEN + TileDistance.UNREACHABLE + 1];
+  private int queued = 0;
+
+  // the parent of an edge is stored as its complement if the child is reached by a crash
+  private MutableIntList edgeParents = new IntArrayList(2 << 12);
+  private MutableIntList edgeChildren = new IntArrayList(2 << 12);
+  private MutableIntList edgeLengths = new IntArrayList(2 << 12);
+  private MutableIntList goals = new IntArrayList();
+
+  private MutableIntObjectMap<Move> moves = new IntObjectHashMap<>();
+  private long[] next = new long[MapRule.MAX_NEXT];
+
+  PackedSearch(Game game, GameRule rule, CrashDetector crashDetector, MovesToGo movesToGo, boolean withAStarSearch,
+      boolean withMultiCrash, BooleanSupplier stopped) {
+    this.game = game;
+    this.rule = rule;
+    this.crashDetector = crashDetector;
+    this.movesToGo = movesToGo;
+    this.withAStarSearch = withAStarSearch;
+    this.withMultiCrash = withMultiCrash;
+    this.stopped = stopped;
+  }
+
+  Paths search(Paths starts, MapTile toCp, int overshot, AtomicInteger minPathLength) {
+    setTargets(toCp, Collections.emptyList());
+    int minPriority = addStarts(starts);
+
+    boolean crossedCp = false;
+    int minPathLengthToCp = minPathLength.get(); // initialize with global known minimum
+    search: for (int priority = minPriority; priority < buckets.length; priority++) {
+      MutableIntList bucket = buckets[priority];
+      if (bucket == null) {
+        continue;
+      }
+      for (int i = 0; i < bucket.size(); i++) {
+        int node = bucket.get(i);
+        long state = states[node];
+        queued--;
+        if (getPriority(node) != priority) {
+          continue; // state has been found on a shorter path meanwhile
+        }
+        if (priority > minPathLengthToCp + overshot || priority > minPathLength.get() || stopped.getAsBoolean()) {
+          break search;
+        }
+
+        int len = MoveState.pathLen(state);
+        int x = MoveState.x(state);
+        int y = MoveState.y(state);
+        int xv = MoveState.xv(state);
+        int yv = MoveState.yv(state);
+        if (rule.hasForbidXdFinishline(x, y, xv, yv)) {
+          continue;
+        } else if (rule.hasXdCp(x, y, xv, yv, toCp)) {
+          goals.add(node);
+          if (!crossedCp) {
+            crossedCp = true;
+            minPathLengthToCp = len;
+            continue;
+          }
+        } else if (movesToGo != null && movesToGo.isBeyond(toCp, x, y, xv, yv, len,
+            Math.min(minPathLengthToCp + overshot, minPathLength.get()))) {
+          continue;
+        }
+        if (!pushNext(node, state) && ((queued == 0 && minPathLengthToCp >= minPathLength.get())
+            || game.isCrashAllowed() || crashDetector.isCrashAhead(state))) {
+          pushMovesAfterCrash(node, state);
+        }
+      }
+      buckets[priority] = null;
+    }
+    return buildPaths(starts);
+  }
+
+  /**
+   * Searches the shortest paths crossing all missing checkpoints in any order and the finishline afterwards. Replaces
+   * solving the {@link TSP} and searching each leg of every tour separately.
+   */
+  Paths searchTours(Paths starts, MutableCollection<MapTile> missingCps, AtomicInteger minPathLength) {
+    setTargets(MapTile.FINISH, missingCps);
+    int minPriority = addStarts(starts);
+
+    int minPathLengthToFinish = minPathLength.get();
+    search: for (int priority = minPriority; priority < buckets.length; priority++) {
+      MutableIntList bucket = buckets[priority];
+      if (bucket == null) {
+        continue;
+      }
+      for (int i = 0; i < bucket.size(); i++) {
+        int node = bucket.get(i);
+        long state = states[node];
+        queued--;
+        if (getPriority(node) != priority) {
+          continue; // state has been found on a shorter path meanwhile
+        }
+        if (priority > minPathLengthToFinish || stopped.getAsBoolean()) {
+          break search;
+        }
+
+        int len = MoveState.pathLen(state);
+        int x = MoveState.x(state);
+        int y = MoveState.y(state);
+        int xv = MoveState.xv(state);
+        int yv = MoveState.yv(state);
+        if (rule.hasForbidXdFinishline(x, y, xv, yv)) {
+          continue;
+        } else if (masks[node] == 0 && rule.hasXdCp(x, y, xv, yv, MapTile.FINISH)) {
+          goals.add(node);
+          minPathLengthToFinish = len;
+          continue;
+        } else if (isBeyond(state, masks[node], minPathLengthToFinish)) {
+          continue;
+        }
+        if (!pushNext(node, state) && ((queued == 0 && goals.isEmpty()) || game.isCrashAllowed()
+            || crashDetector.isCrashAhead(state))) {
+          pushMovesAfterCrash(node, state);
+        }
+      }
+      buckets[priority] = null;
+    }
+    if (!goals.isEmpty()) {
+      int length = minPathLengthToFinish;
+      minPathLength.updateAndGet(x -> Math.min(x, length));
+    }
+    return buildPaths(starts);
+  }
+
+  private void setTargets(MapTile target, Collection<MapTile> missingCps) {
+    targets = new MapTile[missingCps.size() + 1];
+    targets[0] = target;
+    int i = 1;
+    for (MapTile cp : missingCps) {
+      targets[i++] = cp;
+    }
+    distances = new TileDistance[targets.length];
+    if (withAStarSearch) {
+      for (i = 0; i < targets.length; i++) {
+        distances[i] = TileDistance.get(game.getMap(), targets[i]);
+      }
+    }
+  }
+
+  private int addStarts(Paths starts) {
+    int minPriority = buckets.length;
+    for (Move start : starts.getEndMoves()) {
+      long state = MoveState.of(start);
+      if (CrashDetector.hasCrashHappend(start, CrashDetector.CRASH_DETECTOR_DEPTH)) {
+        state = MoveState.withCrash(state);
+      }
+      int mask = getMask((1 << (targets.length - 1)) - 1, state);
+      int node = visited.getIfAbsent(getKey(state, mask), -1);
+      if (node == -1) {
+        node = addNode(state, mask);
+        moves.put(node, start);
+        minPriority = Math.min(minPriority, getPriority(node));
+      } else if (MoveState.pathLen(states[node]) == start.getPathLen()) {
+        moves.get(node).merge(start);
+      }
+    }
+    return minPriority;
+  }
+
+  /**
+   * Returns the checkpoints still missing after the move of the state
+   */
+  private int getMask(int mask, long state) {
+    for (int i = 1; i < targets.length; i++) {
+      int bit = 1 << (i - 1);
+      if ((mask & bit) != 0 && rule.hasXdCp(MoveState.x(state), MoveState.y(state), MoveState.xv(state),
+          MoveState.yv(state), targets[i])) {
+        mask &= ~bit;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Tells if one of the checkpoints still missing or the finishline can't be crossed within the given path length
+   */
+  private boolean isBeyond(long state, int mask, int maxPathLen) {
+    if (movesToGo == null)
+      return false;
+
+    int x = MoveState.x(state);
+    int y = MoveState.y(state);
+    int xv = MoveState.xv(state);
+    int yv = MoveState.yv(state);
+    int len = MoveState.pathLen(state);
+    for (int i = 0; i < targets.length; i++) {
+      if ((i == 0 || (mask & (1 << (i - 1))) != 0) && movesToGo.isBeyond(targets[i], x, y, xv, yv, len, maxPathLen))
+        return true;
+    }
+    return false;
+  }
+
+  private boolean pushNext(int node, long state) {
+    int x = MoveState.x(state);
+    int y = MoveState.y(state);
+    int len = MoveState.pathLen(state) + 1;
+    if (len > MoveState.MAX_PATH_LEN)
+      return false;
+
+    int count = rule.getNext(x, y, MoveState.xv(state), MoveState.yv(state), next);
+    for (int i = 0; i < count; i++) {
+      long nextState = MoveState.of(next[i], len);
+      push(MoveState.isCrashed(state) ? MoveState.withCrash(nextState) : nextState, masks[node], node);
+    }
+    return count > 0;
+  }
+
+  private void pushMovesAfterCrash(int node, long state) {
+    Move crash = new Move(MoveState.x(state), MoveState.y(state), MoveState.xv(state), MoveState.yv(state));
+    for (Move next : crash.getMovesAfterCrash(game.getZzz(), withMultiCrash)) {
+      int len = MoveState.pathLen(state) + next.getPathLen() - crash.getPathLen();
+      if (len <= MoveState.MAX_PATH_LEN) {
+        push(MoveState.withCrash(MoveState.of(next.getX(), next.getY(), next.getXv(), next.getYv(), len)),
+            masks[node], ~node);
+      }
+    }
+  }
+
+  private void push(long state, int parentMask, int parent) {
+    int len = MoveState.pathLen(state);
+    int mask = getMask(parentMask, state);
+    int node = visited.getIfAbsent(getKey(state, mask), -1);
+    if (node == -1) {
+      node = addNode(state, mask);
+    } else {
+      int knownLen = MoveState.pathLen(states[node]);
+      if (len > knownLen)
+        return;
+
+      states[node] |= state; // keeps the crash flag of all paths to this state
+      if (len < knownLen) { // only happens for states reached by a crash before
+        states[node] = state;
+        enqueue(node);
+      }
+    }
+    edgeParents.add(parent);
+    edgeChildren.add(node);
+    edgeLengths.add(len);
+  }
+
+  private long getKey(long state, int mask) {
+    return MoveState.key(state) | ((long) mask << MASK_SHIFT);
+  }
+
+  private int addNode(long state, int mask) {
+    if (nodeCount == states.length) {
+      states = Arrays.copyOf(states, nodeCount * 2);
+      masks = Arrays.copyOf(masks, nodeCount * 2);
+      estimates = Arrays.copyOf(estimates, nodeCount * 2);
+    }
+    int node = nodeCount++;
+    states[node] = state;
+    masks[node] = mask;
+    estimates[node] = estimate(state, mask);
+    visited.put(getKey(state, mask), node);
+    enqueue(node);
+    return node;
+  }
+
+  /**
+   * The moves needed to cross all targets still missing are at least the maximum of the estimates of each target
+   */
+  private int estimate(long state, int mask) {
+    if (!withAStarSearch)
+      return 0;
+
+    int x = MoveState.x(state);
+    int y = MoveState.y(state);
+    int xv = MoveState.xv(state);
+    int yv = MoveState.yv(state);
+    int estimate = 0;
+    for (int i = 0; i < targets.length; i++) {
+      if (i == 0 || (mask & (1 << (i - 1))) != 0) {
+        estimate = Math.max(estimate, distances[i].estimate(rule, x, y, xv, yv));
+      }
+    }
+    return estimate;
+  }
+
+  private int getPriority(int node) {
+    return MoveState.pathLen(states[node]) + estimates[node];
+  }
+
+  private void enqueue(int node) {
+    int priority = getPriority(node);
+    if (buckets[priority] == null) {
+      buckets[priority] = new IntArrayList();
+    }
+    buckets[priority].add(node);
+    queued++;
+  }
+
+  /**
+   * Keeps only the edges on paths to a checkpoint crossing and creates the move objects for them. Moves are created in
+   * the order of the path length of their predecessors, so the move of a predecessor always exists already. States
+   * differing only in the missing checkpoints share one move object, as tours are merged in {@link Paths#merge(Paths)}.
+   */
+  private Paths buildPaths(Paths starts) {
+    boolean[] onPath = markPredecessors();
+
+    MutableLongObjectMap<Move> sharedMoves = new LongObjectHashMap<>();
+    moves.forEachKeyValue((node, move) -> sharedMoves.put(MoveState.withoutCrash(states[node]), move));
+
+    int[] lenCount = new int[MoveState.MAX_PATH_LEN + 2];
+    MutableIntList pathEdges = new IntArrayList();
+    for (int edge = 0; edge < edgeChildren.size(); edge++) {
+      if (onPath[edgeChildren.get(edge)] && isShortest(edge)) {
+        pathEdges.add(edge);
+        lenCount[MoveState.pathLen(states[getParent(edge)]) + 1]++;
+      }
+    }
+    for (int len = 1; len < lenCount.length; len++) {
+      lenCount[len] += lenCount[len - 1];
+    }
+    int[] sortedEdges = new int[pathEdges.size()]; // stable, so the edges of a move stay together
+    pathEdges.each(edge -> sortedEdges[lenCount[MoveState.pathLen(states[getParent(edge)])]++] = edge);
+
+    int lastParent = Integer.MIN_VALUE;
+    MutableList<Move> nextMoves = null;
+    for (int edge : sortedEdges) {
+      int parent = edgeParents.get(edge);
+      if (parent != lastParent) {
+        Move parentMove = moves.get(getParent(edge));
+        if (parentMove == null) {
+          continue;
+        }
+        nextMoves = parent < 0 ? parentMove.getMovesAfterCrash(game.getZzz(), withMultiCrash) : parentMove.getNext();
+        lastParent = parent;
+      }
+      int child = edgeChildren.get(edge);
+      long childState = states[child];
+      Move move = nextMoves.detect(m -> MoveState.equalsState(childState, m));
+      if (move != null) {
+        Move knownMove = sharedMoves.get(MoveState.withoutCrash(childState));
+        if (knownMove != null) {
+          knownMove.merge(move);
+          moves.put(child, knownMove);
+        } else {
+          sharedMoves.put(MoveState.withoutCrash(childState), move);
+          moves.put(child, move);
+        }
+      }
+    }
+
+    Paths shortestPaths = Paths.getCopy(starts);
+    Set<Move> goalMoves = Collections.newSetFromMap(new IdentityHashMap<>());
+    goals.each(goal -> {
+      Move move = moves.get(goal);
+      if (move != null && goalMoves.add(move)) {
+        shortestPaths.add(move);
+      }
+    });
+    return shortestPaths;
+  }
+
+  /**
+   * Marks all states with a shortest path to one of the goals by walking the edges backwards from the goals
+   */
+  private boolean[] markPredecessors() {
+    int[] firstEdge = new int[nodeCount + 1];
+    for (int edge = 0; edge < edgeChildren.size(); edge++) {
+      if (isShortest(edge)) {
+        firstEdge[edgeChildren.get(edge) + 1]++;
+      }
+    }
+    for (int node = 1; node <= nodeCount; node++) {
+      firstEdge[node] += firstEdge[node - 1];
+    }
+    int[] nextEdge = Arrays.copyOf(firstEdge, nodeCount);
+    int[] edgesByChild = new int[firstEdge[nodeCount]];
+    for (int edge = 0; edge < edgeChildren.size(); edge++) {
+      if (isShortest(edge)) {
+        edgesByChild[nextEdge[edgeChildren.get(edge)]++] = edge;
+      }
+    }
+
+    boolean[] onPath = new boolean[nodeCount];
+    MutableIntList stack = new IntArrayList();
+    goals.each(goal -> {
+      onPath[goal] = true;
+      stack.add(goal);
+    });
+    while (!stack.isEmpty()) {
+      int node = stack.removeAtIndex(stack.size() - 1);
+      for (int i = firstEdge[node]; i < firstEdge[node + 1]; i++) {
+        int parent = getParent(edgesByChild[i]);
+        if (!onPath[parent]) {
+          onPath[parent] = true;
+          stack.add(parent);
+        }
+      }
+    }
+    return onPath;
+  }
+
+  private int getParent(int edge) {
+    int parent = edgeParents.get(edge);
+    return parent < 0 ? ~parent : parent;
+  }
+
+  private boolean isShortest(int edge) {
+    return edgeLengths.get(edge) == MoveState.pathLen(states[edgeChildren.get(edge)]);
+  }
+
+}
@@ -0,0 +1,121 @@
+package org.racetrack.track;
+
+import java.util.*;
+
+import org.eclipse.collections.api.collection.*;
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.map.primitive.*;
+import org.eclipse.collections.api.set.*;
+import org.eclipse.collections.impl.factory.*;
+import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.racetrack.karoapi.*;
+
+/**
+ * Paths of the players of a game found in an earlier turn. The paths from a move on a shortest path are still the
+ * shortest ones, so as long as a player has moved along them they are taken instead of being searched again. They are
+ * searched again after a crash, a move off the paths or a checkpoint missing that was not missing before.
+ *
+ * The paths are kept in their compact form (see {@link PathDag}) for the most recently searched players.
+ */
+public final class PathCache {
+
+  private static final int MAX_PLAYERS = 256;
+
+  private static class Entry {
+    private PathDag paths;
+    private MutableSet<MapTile> missingCps;
+
+    private Entry(PathDag paths, Collection<MapTile> missingCps) {
+      this.paths = paths;
+      this.missingCps = Sets.mutable.withAll(missingCps);
+    }
+  }
+
+  private static Map<String, Entry> cache = new LinkedHashMap<String, Entry>(MAX_PLAYERS, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_PLAYERS;
+    }
+  };
+
+  private static String getKey(Game game, Player player) {
+    return game.getId() + "/" + player.getId();
+  }
+
+  /**
+   * Keeps the complete paths of the player searched for the missing checkpoints
+   */
+  public static void put(Game game, Player player, Paths paths, Collection<MapTile> missingCps) {
+    Entry entry = new Entry(PathDag.of(paths), missingCps);
+    synchronized (cache) {
+      cache.put(getKey(game, player), entry);
+    }
+  }
+
+  /**
+   * Returns the paths from the possible moves of the player, if the player has moved along the kept paths. Returns
+   * null if the paths have to be searched.
+   */
+  public static Paths get(Game game, Player player, Paths possibles, Collection<MapTile> missingCps) {
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(getKey(game, player));
+    }
+    Move motion = player.getMotion();
+    if (entry == null || motion == null || motion.isCrash() || !entry.missingCps.containsAll(missingCps))
+      return null;
+
+    PathDag paths = entry.paths;
+    int root = paths.find(motion);
+    if (root == PathDag.NONE)
+      return null;
+
+    // the moves of each level are created from their predecessors, as their path lengths start at the new motion
+    MutableIntObjectMap<Move> level = new IntObjectHashMap<>();
+    for (Move start : possibles.getEndMoves()) {
+      for (int i = 0; i < paths.countSuccessors(root); i++) {
+        int node = paths.getSuccessor(root, i);
+        if (MoveState.key(paths.getState(node)) == MoveState.key(start)) {
+          level.put(node, start);
+        }
+      }
+    }
+
+    Paths reused = Paths.getCopy(possibles);
+    while (!level.isEmpty()) {
+      MutableIntObjectMap<Move> nextLevel = new IntObjectHashMap<>();
+      for (int node : level.keySet().toArray()) {
+        Move move = level.get(node);
+        if (paths.countSuccessors(node) == 0) {
+          reused.add(move);
+          continue;
+        }
+        MutableList<Move> nextMoves = move.getNext();
+        for (int i = 0; i < paths.countSuccessors(node); i++) {
+          int successor = paths.getSuccessor(node, i);
+          if (paths.isCrash(successor))
+            return null;
+
+          long key = MoveState.key(paths.getState(successor));
+          Move next = nextMoves.detect(m -> MoveState.key(m) == key);
+          if (next != null) {
+            Move known = nextLevel.get(successor);
+            if (known != null) {
+              known.merge(next);
+            } else {
+              nextLevel.put(successor, next);
+            }
+          }
+        }
+      }
+      level = nextLevel;
+    }
+    return reused.isEmpty() ? null : reused;
+  }
+
+  private PathCache() {
+  }
+
+}
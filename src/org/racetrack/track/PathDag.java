@@ -0,0 +1,280 @@
+package org.racetrack.track;
+
+import java.util.*;
+
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.list.primitive.*;
+import org.eclipse.collections.api.map.primitive.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
+import org.eclipse.collections.impl.map.mutable.primitive.*;
+import org.racetrack.karoapi.*;
+
+/**
+ * Immutable compact form of {@link Paths}. The moves are nodes numbered by round and stored as packed states (see
+ * {@link MoveState}) in arrays. The predecessors and successors of the nodes are index arrays with the offsets of the
+ * edges of each node (compressed sparse rows), and the nodes of each round are found by the offsets of the rounds.
+ *
+ * It needs no move objects, collections or references between moves, so it is much smaller than the paths. The game
+ * tree searches work on it, so the paths found for the players of a game are only kept in this form while the moves
+ * are searched.
+ */
+public final class PathDag {
+
+  public static final int NONE = -1;
+
+  /**
+   * Creates the compact form of the paths, which contains the moves of all rounds (see
+   * {@link Paths#getMovesOfRound(int)})
+   */
+  public static PathDag of(Paths paths) {
+    MutableIntObjectMap<MutableList<Move>> rounds = paths.getRoundIndex();
+    if (rounds.isEmpty())
+      return new PathDag(paths, 0, new int[] { 0 }, new long[0], new BitSet(), new int[] { 0 }, new int[0]);
+
+    int firstRound = rounds.keysView().min();
+    int lastRound = rounds.keysView().max();
+    // the moves are numbered in the order of their round, equal moves of different rounds are different nodes
+    int[] roundOffsets = new int[lastRound - firstRound + 2];
+    MutableIntObjectMap<MutableObjectIntMap<Move>> roundNodes = new IntObjectHashMap<>();
+    int size = 0;
+    for (int round = firstRound; round <= lastRound; round++) {
+      roundOffsets[round - firstRound] = size;
+      MutableObjectIntMap<Move> nodes = new ObjectIntHashMap<>();
+      roundNodes.put(round, nodes);
+      MutableList<Move> moves = rounds.get(round);
+      if (moves != null) {
+        for (Move move : moves) {
+          if (nodes.containsKey(move))
+            throw new IllegalArgumentException("Move " + move + " is twice in round " + round);
+          nodes.put(move, size++);
+        }
+      }
+    }
+    roundOffsets[roundOffsets.length - 1] = size;
+
+    long[] states = new long[size];
+    BitSet crashs = new BitSet(size);
+    int[] predOffsets = new int[size + 1];
+    int[][] nodePreds = new int[size][];
+    roundNodes.forEachValue(nodes -> nodes.forEachKeyValue((move, node) -> {
+      states[node] = MoveState.of(move);
+      crashs.set(node, move.isCrash());
+      nodePreds[node] = move.getPreds() != null ? move.getPreds().collectInt(pred -> {
+        MutableObjectIntMap<Move> predNodes = roundNodes.get(pred.getTotalLen() + 1);
+        return predNodes != null ? predNodes.getIfAbsent(pred, NONE) : NONE;
+      }).select(pred -> pred != NONE).toArray() : new int[0];
+    }));
+    for (int node = 0; node < states.length; node++) {
+      predOffsets[node + 1] = predOffsets[node] + nodePreds[node].length;
+    }
+    int[] preds = new int[predOffsets[states.length]];
+    for (int node = 0; node < states.length; node++) {
+      System.arraycopy(nodePreds[node], 0, preds, predOffsets[node], nodePreds[node].length);
+    }
+    return new PathDag(paths, firstRound, roundOffsets, states, crashs, predOffsets, preds);
+  }
+
+  private final int minLength;
+  private final int minTotalLength;
+  private final String comment;
+  private final int firstRound;
+  private final int[] roundOffsets;
+  private final long[] states;
+  private final BitSet crashs;
+  private final int[] predOffsets;
+  private final int[] preds;
+  private final int[] succOffsets;
+  private final int[] succs;
+
+  private PathDag(Paths paths, int firstRound, int[] roundOffsets, long[] states, BitSet crashs, int[] predOffsets,
+      int[] preds) {
+    minLength = paths.getMinLength();
+    minTotalLength = paths.getMinTotalLength();
+    comment = paths.getComment();
+    this.firstRound = firstRound;
+    this.roundOffsets = roundOffsets;
+    this.states = states;
+    this.crashs = crashs;
+    this.predOffsets = predOffsets;
+    this.preds = preds;
+
+    // the successors are the inverted edges of the predecessors
+    succOffsets = new int[states.length + 1];
+    for (int pred : preds) {
+      succOffsets[pred + 1]++;
+    }
+    for (int node = 0; node < states.length; node++) {
+      succOffsets[node + 1] += succOffsets[node];
+    }
+    succs = new int[preds.length];
+    int[] filled = new int[states.length];
+    for (int node = 0; node < states.length; node++) {
+      for (int i = predOffsets[node]; i < predOffsets[node + 1]; i++) {
+        int pred = preds[i];
+        succs[succOffsets[pred] + filled[pred]++] = node;
+      }
+    }
+  }
+
+  public int size() {
+    return states.length;
+  }
+
+  public boolean isEmpty() {
+    return states.length == 0;
+  }
+
+  /**
+   * Same as {@link Paths#getMinLength()}
+   */
+  public int getMinLength() {
+    return minLength;
+  }
+
+  /**
+   * Same as {@link Paths#getMinTotalLength()}
+   */
+  public int getMinTotalLength() {
+    return minTotalLength;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public int getFirstRound() {
+    return firstRound;
+  }
+
+  public int getLastRound() {
+    return firstRound + roundOffsets.length - 2;
+  }
+
+  /**
+   * Returns the first node of the moves starting in the round
+   */
+  public int getRoundStart(int round) {
+    return roundOffsets[Math.max(0, Math.min(round - firstRound, roundOffsets.length - 1))];
+  }
+
+  /**
+   * Returns the node after the last node of the moves starting in the round
+   */
+  public int getRoundEnd(int round) {
+    return roundOffsets[Math.max(0, Math.min(round - firstRound + 1, roundOffsets.length - 1))];
+  }
+
+  public long getState(int node) {
+    return states[node];
+  }
+
+  public int getX(int node) {
+    return MoveState.x(states[node]);
+  }
+
+  public int getY(int node) {
+    return MoveState.y(states[node]);
+  }
+
+  public int getXv(int node) {
+    return MoveState.xv(states[node]);
+  }
+
+  public int getYv(int node) {
+    return MoveState.yv(states[node]);
+  }
+
+  public int getPathLen(int node) {
+    return MoveState.pathLen(states[node]);
+  }
+
+  public int getTotalLen(int node) {
+    int index = Arrays.binarySearch(roundOffsets, node);
+    if (index < 0) {
+      index = -index - 2;
+    } else {
+      // rounds without moves have the same offset as the next round
+      while (index + 1 < roundOffsets.length && roundOffsets[index + 1] == node) {
+        index++;
+      }
+    }
+    return firstRound + index - 1;
+  }
+
+  public boolean isCrash(int node) {
+    return crashs.get(node);
+  }
+
+  public int countPredecessors(int node) {
+    return predOffsets[node + 1] - predOffsets[node];
+  }
+
+  public int getPredecessor(int node, int i) {
+    return preds[predOffsets[node] + i];
+  }
+
+  public int countSuccessors(int node) {
+    return succOffsets[node + 1] - succOffsets[node];
+  }
+
+  public int getSuccessor(int node, int i) {
+    return succs[succOffsets[node] + i];
+  }
+
+  /**
+   * Returns the nodes of the moves starting in the round, same as {@link Paths#getMovesOfRound(int)}
+   */
+  public MutableIntList getNodesOfRound(int round) {
+    MutableIntList nodes = new IntArrayList(countNodesOfRound(round));
+    for (int node = getRoundStart(round); node < getRoundEnd(round); node++) {
+      nodes.add(node);
+    }
+    return nodes;
+  }
+
+  /**
+   * Same as the size of {@link #getNodesOfRound(int)}, without creating a list
+   */
+  public int countNodesOfRound(int round) {
+    return getRoundEnd(round) - getRoundStart(round);
+  }
+
+  /**
+   * Returns the successors of the node starting in the round, same as {@link Paths#getSuccessors(int, Move)}
+   */
+  public MutableIntList getSuccessors(int node, int round) {
+    MutableIntList nodes = new IntArrayList(countSuccessors(node));
+    for (int i = succOffsets[node]; i < succOffsets[node + 1]; i++) {
+      if (succs[i] >= getRoundStart(round) && succs[i] < getRoundEnd(round)) {
+        nodes.add(succs[i]);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Same as the size of {@link #getSuccessors(int, int)}, without creating a list
+   */
+  public int countSuccessors(int node, int round) {
+    int count = 0;
+    for (int i = succOffsets[node]; i < succOffsets[node + 1]; i++) {
+      if (succs[i] >= getRoundStart(round) && succs[i] < getRoundEnd(round)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the node of the move in the round it was played in, {@link #NONE} if the move is not on the paths
+   */
+  public int find(Move move) {
+    int round = move.getTotalLen() + 1;
+    for (int node = getRoundStart(round); node < getRoundEnd(round); node++) {
+      if (!isCrash(node) && MoveState.key(states[node]) == MoveState.key(move))
+        return node;
+    }
+    return NONE;
+  }
+
+}
@@ -12,6 +12,7 @@ import org.eclipse.collections.api.map.primitive.*;
 import org.eclipse.collections.impl.list.mutable.*;
 import org.eclipse.collections.impl.map.mutable.primitive.*;
 import org.racetrack.collections.*;
+import org.racetrack.concurrent.*;
 import org.racetrack.config.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.rules.*;
@@ -32,15 +33,22 @@ public class PathFinder implements Callable<Paths> {
   }
 
   private boolean withMultiCrash = Settings.getInstance().withMultiCrash();
+  private boolean withPackedSearch = Settings.getInstance().withPackedSearch();
+  private boolean withAStarSearch = Settings.getInstance().withAStarSearch();
+  private boolean withMovesToGo = Settings.getInstance().withMovesToGo();
+  private boolean withTourSearch = Settings.getInstance().withTourSearch();
+  private boolean withPathCache = Settings.getInstance().withPathCache();
 
   private Game game;
   private Player player;
 
   private GameRule rule;
   private CrashDetector crashDetector;
+  private MovesToGo movesToGo;
   private TSP tsp;
 
   private AtomicInteger minPathLength = new AtomicInteger(MAX_MOVE_LIMIT);
+  private volatile boolean stopped = false;
 
   public PathFinder(Game game, Player player) {
     this.game = game;
@@ -56,19 +64,45 @@ public class PathFinder implements Callable<Paths> {
     this.tsp = tsp;
   }
 
+  /**
+   * Stops the search, which then returns the paths of all tours to the finish found so far
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  public boolean isStopped() {
+    return stopped;
+  }
+
   @Override
   public Paths call() {
     Thread.currentThread().setName("PathFinder");
     Paths possiblePaths = rule.filterPossibles(new Paths(player.getNextMoves()));
     if (possiblePaths.isEmpty())
       return Paths.empty();
-    crashDetector = new CrashDetector(rule, possiblePaths.getEndMoves());
+    movesToGo = withMovesToGo ? MovesToGo.get(rule) : null;
+    crashDetector = new CrashDetector(rule, possiblePaths.getEndMoves(), movesToGo);
 
+    MutableCollection<MapTile> missingCps = game.withCps() ? player.getMissingCps() : new FastList<>();
+    boolean isCacheable = withPathCache && rule.isHistoryFree();
     if (rule.hasNotXdFinishlineOnF1Circuit(player.getMotion())) {
       possiblePaths = breadthFirstSearch(possiblePaths, MapTile.FINISH, false);
+      isCacheable = false;
+    } else if (isCacheable) {
+      Paths cached = PathCache.get(game, player, possiblePaths, missingCps);
+      if (cached != null) {
+        if (printStatus) {
+          ConsoleOutput.println(game.getId(), player.getName() + " moves along the paths of the last turn.");
+        }
+        PathCache.put(game, player, cached, missingCps);
+        return cached;
+      }
     }
 
-    MutableCollection<MapTile> missingCps = game.withCps() ? player.getMissingCps() : new FastList<>();
+    if (withTourSearch && rule.isHistoryFree())
+      return keep(searchTours(possiblePaths, missingCps), missingCps, isCacheable);
+
     TourStopover tours = tsp.solve(possiblePaths.getEndMoves(), missingCps);
     if (printStatus) {
       ConsoleOutput.println(game.getId(), player.getName() + " travels " + tours.size() + " tour(s)."
@@ -78,18 +112,47 @@ public class PathFinder implements Callable<Paths> {
     if (Thread.currentThread().isInterrupted())
       return Paths.empty();
 
-    ForkJoinPool executor = new ForkJoinPool();
+    ForkJoinTask<Paths> task = ComputePool.get().submit(travelTours(possiblePaths, tours));
     try {
-      return executor.submit(travelTours(possiblePaths, tours)).get();
+      return keep(task.get(), missingCps, isCacheable);
     } catch (InterruptedException e) {
+      // the tasks of the shared pool are not interrupted, but end as soon as they see the search stopped
+      stop();
     } catch (ExecutionException e) {
       logger.severe(e.getMessage());
-    } finally {
-      executor.shutdownNow();
     }
     return Paths.empty();
   }
 
+  /**
+   * Keeps the paths for the next turn (see {@link PathCache}), unless the search was stopped before all paths were
+   * found
+   */
+  private Paths keep(Paths paths, MutableCollection<MapTile> missingCps, boolean isCacheable) {
+    if (isCacheable && !stopped && !paths.isEmpty()) {
+      PathCache.put(game, player, paths, missingCps);
+    }
+    return paths;
+  }
+
+  /**
+   * Searches the paths over all missing checkpoints in a single pass instead of searching each leg of the tours
+   */
+  private Paths searchTours(Paths possibles, MutableCollection<MapTile> missingCps) {
+    if (printStatus) {
+      ConsoleOutput.println(game.getId(), player.getName() + " searches all tours at once."
+          + (missingCps.isEmpty() ? "" : " Missing CPs: " + missingCps));
+    }
+    Paths paths = new PackedSearch(game, rule, crashDetector, getMovesToGo(), withAStarSearch, withMultiCrash,
+        () -> stopped).searchTours(rule.filterPossibles(possibles), missingCps, minPathLength);
+    if (printStatus && !paths.isEmpty()) {
+      ConsoleOutput.println(game.getId(), "Finish: " + paths.getMinLength() + " "
+          + paths.getMovesOfRound(game.getCurrentRound())
+              .sortThis((o1, o2) -> o1.getX() - o2.getX() != 0 ? o1.getX() - o2.getX() : o1.getY() - o2.getY()));
+    }
+    return paths;
+  }
+
   private RecursiveTask<Paths> travelTours(Paths possibles, TourStopover stopOver) {
     return new RecursiveTask<Paths>() {
       private static final long serialVersionUID = 1L;
@@ -97,6 +160,8 @@ public class PathFinder implements Callable<Paths> {
       @Override
       protected Paths compute() {
         Thread.currentThread().setName("PathFinder to " + stopOver.getCp());
+        if (stopped)
+          return Paths.empty();
 
         Paths pathsToCp = stopOver.isStart() ? possibles : breadthFirstSearch(possibles, stopOver.getCp(), true);
         if (pathsToCp.isEmpty() || pathsToCp.getMinLength() > minPathLength.get())
@@ -125,17 +190,25 @@ public class PathFinder implements Callable<Paths> {
 
   private Paths breadthFirstSearch(Paths starts, MapTile toCp, boolean crossedStartLine) {
     int overshot = getCpFoundOvershot(toCp, crossedStartLine);
+    if (withPackedSearch && rule.isHistoryFree())
+      return new PackedSearch(game, rule, crashDetector, getMovesToGo(), withAStarSearch, withMultiCrash,
+          () -> stopped).search(rule.filterPossibles(starts), toCp, overshot, minPathLength);
+
+    TileDistance distance = withAStarSearch ? TileDistance.get(game.getMap(), toCp) : null;
+
     MutableIntObjectMap<Move> visitedMoves = new IntObjectHashMap<>(2 << 18);
     Paths filtered = rule.filterPossibles(starts);
     Queue<Move> queue = ShortBucketPriorityQueue.of(filtered.getEndMoves(),
-        (Function<Move, Short>) move -> (short) move.getTotalLen());
+        (Function<Move, Short>) move -> (short) (move.getTotalLen() + estimate(distance, move)));
     boolean crossedCP = false;
     int minPathLengthToCp = minPathLength.get(); // initialize with global known minimum
 
+    MovesToGo movesToGo = getMovesToGo();
     Paths shortestPaths = Paths.getCopy(filtered);
     while (!queue.isEmpty()) {
       Move move = queue.poll();
-      if (move.getPathLen() > minPathLengthToCp + overshot || move.getPathLen() > minPathLength.get())
+      int minLength = move.getPathLen() + estimate(distance, move);
+      if (minLength > minPathLengthToCp + overshot || minLength > minPathLength.get() || stopped)
         return shortestPaths;
 
       Move knownMove;
@@ -149,6 +222,9 @@ public class PathFinder implements Callable<Paths> {
           continue;
         } else if (rule.hasXdCp(move, toCp) && shortestPaths.add(move) && (!crossedCP && (crossedCP ^= true))) {
           minPathLengthToCp = move.getPathLen();
+        } else if (movesToGo != null && movesToGo.isBeyond(toCp, move.getX(), move.getY(), move.getXv(), move.getYv(),
+            move.getPathLen(), Math.min(minPathLengthToCp + overshot, minPathLength.get()))) {
+          continue;
         } else if (!queue.addAll(rule.filterNextMv(move))
             && ((queue.isEmpty() && minPathLengthToCp >= minPathLength.get()) || game.isCrashAllowed()
                 || crashDetector.isCrashAhead(move))) {
@@ -159,6 +235,21 @@ public class PathFinder implements Callable<Paths> {
     return shortestPaths;
   }
 
+  /**
+   * Returns the moves to go for pruning states too far away from the checkpoint. They are not used when crashs are
+   * allowed, as a crash might lead to a shorter path.
+   */
+  private MovesToGo getMovesToGo() {
+    return game.isCrashAllowed() ? null : movesToGo;
+  }
+
+  /**
+   * Returns the lower bound of moves to the checkpoint for the A* search or 0 for a plain breadth first search
+   */
+  private int estimate(TileDistance distance, Move move) {
+    return distance != null ? distance.estimate(rule, move) : 0;
+  }
+
   private int getCpFoundOvershot(MapTile toCp, boolean crossedStartLine) {
     if (toCp.isFinish() && crossedStartLine)
       return 0;
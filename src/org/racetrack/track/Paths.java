@@ -2,12 +2,11 @@ package org.racetrack.track;
 
 import java.util.*;
 
-import org.eclipse.collections.api.*;
 import org.eclipse.collections.api.block.predicate.*;
 import org.eclipse.collections.api.collection.*;
 import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.map.*;
 import org.eclipse.collections.api.map.primitive.*;
-import org.eclipse.collections.api.multimap.*;
 import org.eclipse.collections.api.set.*;
 import org.eclipse.collections.impl.factory.*;
 import org.eclipse.collections.impl.list.mutable.*;
@@ -39,6 +38,10 @@ public class Paths {
    * @param moves
    *          the reference moves from a single level
    */
+  private static Set<Move> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
   public static MutableCollection<Move> getCompleteLowerLevel(MutableCollection<Move> moves) {
     MutableCollection<Move> previousLevel = Sets.mutable.empty();
     for (Move move : moves) {
@@ -58,7 +61,9 @@ public class Paths {
   private MutableCollection<Move> moves = new FastList<>(0);
   private String comment = "";
 
-  private MutableIntObjectMap<MutableList<Move>> roundMoves = new IntObjectHashMap<>(192);
+  // index of the moves by round and of the successors of each move, built on first access and reset on changes
+  private volatile MutableIntObjectMap<MutableList<Move>> roundMoves;
+  private volatile MutableMap<Move, MutableList<Move>> successors;
 
   private Paths() {
   }
@@ -68,10 +73,12 @@ public class Paths {
   }
 
   public boolean add(Move move) {
+    resetIndex();
     return moves.add(move);
   }
 
   public void merge(Paths paths) {
+    resetIndex();
     if (comment.isEmpty()) {
       comment = paths.comment;
     }
@@ -85,20 +92,18 @@ public class Paths {
       int newMinimumLength = moves.withAll(paths.getEndMoves()).minBy(move -> move.getTotalLen()).getTotalLen();
       moves = moves.select(move -> move.getTotalLen() == newMinimumLength);
 
-      MutableMultimap<Integer, Move> duplicates = moves.groupBy(move -> move.hashCode())
-          .selectKeysMultiValues((key, values) -> ((RichIterable<Move>) values).size() >= 2);
-      for (Integer key : duplicates.keySet()) {
-        MutableCollection<Move> dups = duplicates.get(key);
-        Move first = null;
-        for (Move move : dups) {
-          if (first == null) {
-            first = move;
-          } else {
-            first.getPreds().addAll(move.getPreds());
-            moves.removeIf(m -> m == move);
-          }
+      MutableIntObjectMap<Move> firsts = new IntObjectHashMap<>();
+      Set<Move> duplicates = newIdentitySet();
+      for (Move move : moves) {
+        Move first = firsts.getIfAbsentPut(move.hashCode(), move);
+        if (first != move) {
+          first.getPreds().addAll(move.getPreds());
+          duplicates.add(move);
         }
       }
+      if (!duplicates.isEmpty()) {
+        moves.removeIf(duplicates::contains);
+      }
 
       MutableCollection<Move> level = moves;
       while (!level.isEmpty()) {
@@ -108,36 +113,54 @@ public class Paths {
     }
   }
 
+  /**
+   * Replaces the predecessors of the moves of a level having the same hash by the first of them, which gets the
+   * predecessors of the replaced ones. The predecessors are indexed by hash and by identity, so the effort is linear in
+   * their count.
+   */
   private void mergePredecessors(MutableCollection<Move> curMoves) {
-    MutableList<Move> preds = new FastList<>();
-    for (Move test : curMoves) {
-      test.getPreds().reject(m -> preds.anySatisfy(p -> p == m), preds);
-    }
-    MutableMultimap<Integer, Move> predGroups = preds.groupBy(pred -> pred.hashCode());
-
-    for (Integer predHash : predGroups.keySet()) {
-      MutableCollection<Move> dups = predGroups.get(predHash);
-      Move first = null;
-      for (Move dupPred : dups) {
-        if (first == null) {
-          first = dupPred;
-        } else {
-          final MutableCollection<Move> firstPredecessors = first.getPreds();
-          dupPred.getPreds().reject(m -> firstPredecessors.anySatisfy(p -> p == m), firstPredecessors);
-          final Move secondFirst = first;
-
-          curMoves.forEach(m -> {
-            final MutableCollection<Move> curPreds = m.getPreds();
-            if (curPreds.removeIf(m1 -> m1 == dupPred)) {
-              curPreds.with(secondFirst);
-            }
+    MutableIntObjectMap<Move> firsts = new IntObjectHashMap<>();
+    Map<Move, Move> replaced = new IdentityHashMap<>();
+    Map<Move, Set<Move>> firstPredecessors = new IdentityHashMap<>();
+    for (Move move : curMoves) {
+      for (Move pred : move.getPreds()) {
+        Move first = firsts.getIfAbsentPut(pred.hashCode(), pred);
+        if (first != pred && replaced.put(pred, first) == null) {
+          Set<Move> known = firstPredecessors.computeIfAbsent(first, f -> {
+            Set<Move> preds = newIdentitySet();
+            preds.addAll(f.getPreds());
+            return preds;
           });
+          for (Move predPred : pred.getPreds()) {
+            if (known.add(predPred)) {
+              first.getPreds().add(predPred);
+            }
+          }
+        }
+      }
+    }
+    if (replaced.isEmpty())
+      return;
+
+    for (Move move : curMoves) {
+      MutableCollection<Move> preds = move.getPreds();
+      if (preds.anySatisfy(replaced::containsKey)) {
+        Set<Move> distinct = newIdentitySet();
+        MutableList<Move> merged = new FastList<>(preds.size());
+        for (Move pred : preds) {
+          Move first = replaced.getOrDefault(pred, pred);
+          if (distinct.add(first)) {
+            merged.add(first);
+          }
         }
+        preds.clear();
+        preds.addAll(merged);
       }
     }
   }
 
   public Paths filterPossibles(Predicate<Move> rule) {
+    resetIndex();
     moves = moves.select(rule);
     return this;
   }
@@ -176,31 +199,86 @@ public class Paths {
         }
       }
     }
+    resetIndex();
   }
 
-  public MutableList<Move> getMovesOfRound(int round) {
-    if (roundMoves.containsKey(round))
-      return roundMoves.get(round);
+  private void resetIndex() {
+    successors = null;
+    roundMoves = null;
+  }
+
+  /**
+   * Walks the paths backwards from the end moves once and indexes the moves by the round they start in and by their
+   * predecessors, so the moves of a round and the successors of a move are looked up without walking the paths again
+   */
+  private synchronized void buildIndex() {
+    if (roundMoves != null)
+      return;
 
-    MutableCollection<Move> beginingMoves = Sets.mutable.empty();
+    MutableIntObjectMap<MutableList<Move>> rounds = new IntObjectHashMap<>(192);
+    // the same position and velocity may be reached in several rounds, so the moves are unique per round only
+    MutableIntObjectMap<MutableSet<Move>> indexed = new IntObjectHashMap<>(192);
     MutableCollection<Move> curLevel = moves;
     while (!curLevel.isEmpty()) {
-      beginingMoves.addAll(curLevel.select(move -> move.getTotalLen() == round - 1));
-      MutableCollection<Move> previousLevel = curLevel.flatCollect(move -> move.getNonCrashPredecessors()).toSet();
-      curLevel = previousLevel;
+      for (Move move : curLevel) {
+        int round = move.getTotalLen() + 1;
+        if (indexed.getIfAbsentPut(round, Sets.mutable::empty).add(move)) {
+          rounds.getIfAbsentPut(round, FastList::new).add(move);
+        }
+      }
+      curLevel = curLevel.flatCollect(move -> move.getNonCrashPredecessors()).toSet();
     }
-    MutableList<Move> moveList = beginingMoves.toList();
-    roundMoves.put(round, moveList);
-    return moveList;
+
+    MutableMap<Move, MutableList<Move>> next = Maps.mutable.empty();
+    for (MutableList<Move> movesOfRound : rounds.values()) {
+      for (Move move : movesOfRound) {
+        if (move.getPreds() != null) {
+          for (Move pred : move.getPreds()) {
+            next.getIfAbsentPut(pred, FastList::new).add(move);
+          }
+        }
+      }
+    }
+    successors = next;
+    roundMoves = rounds;
+  }
+
+  MutableIntObjectMap<MutableList<Move>> getRoundIndex() {
+    MutableIntObjectMap<MutableList<Move>> rounds = roundMoves;
+    if (rounds == null) {
+      buildIndex();
+      rounds = roundMoves;
+    }
+    return rounds;
+  }
+
+  public MutableList<Move> getMovesOfRound(int round) {
+    MutableList<Move> movesOfRound = getRoundIndex().get(round);
+    return movesOfRound != null ? movesOfRound : new FastList<>(0);
   }
 
   public MutableList<Move> getSuccessors(int level, Move predecessor) {
+    MutableList<Move> next = getAllSuccessors(predecessor);
+    return next.isEmpty() ? new FastList<>(0) : next.select(m -> m.getTotalLen() == level - 1);
+  }
+
+  /**
+   * Same as the size of {@link #getSuccessors(int, Move)}, without creating a list
+   */
+  public int countSuccessors(int level, Move predecessor) {
+    return getAllSuccessors(predecessor).count(m -> m.getTotalLen() == level - 1);
+  }
+
+  private MutableList<Move> getAllSuccessors(Move predecessor) {
     if (predecessor == null)
       return new FastList<>(0);
-    MutableList<Move> movesOfRound = getMovesOfRound(level);
-    if (movesOfRound == null || movesOfRound.isEmpty())
-      return new FastList<>(0);
-    return movesOfRound.select(m -> m.getPreds() != null && m.getPreds().contains(predecessor));
+    MutableMap<Move, MutableList<Move>> next = successors;
+    if (next == null || roundMoves == null) {
+      buildIndex();
+      next = successors;
+    }
+    MutableList<Move> successorsOfMove = next.get(predecessor);
+    return successorsOfMove != null ? successorsOfMove : new FastList<>(0);
   }
 
   public MutableCollection<Move> getPartialMoves() {
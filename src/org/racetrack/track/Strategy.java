@@ -24,6 +24,10 @@ public class Strategy {
       ratings = new float[players];
     }
 
+    private Evaluation(Evaluation eval) {
+      ratings = eval.ratings.clone();
+    }
+
     @Override
     public String toString() {
       StringBuilder sb = new StringBuilder();
@@ -68,17 +72,21 @@ public class Strategy {
       return predRating - playerRating;
     }
 
+    /**
+     * Returns a normalized copy, the evaluation itself is left unchanged as it may be shared by the search
+     */
     public Evaluation normalize() {
       float sum = 0f;
       for (float rating : ratings) {
         sum += rating;
       }
+      Evaluation normalized = new Evaluation(this);
       if (sum != 1f) {
         for (int i = 0; i < ratings.length; i++) {
-          ratings[i] = sum != 0 ? ratings[i] / sum : 1f / ratings.length;
+          normalized.ratings[i] = sum != 0 ? ratings[i] / sum : 1f / ratings.length;
         }
       }
-      return this;
+      return normalized;
     }
 
   }
@@ -153,6 +161,21 @@ public class Strategy {
       return evals.max(comp(players.get(pl)));
   }
 
+  public boolean isParanoid() {
+    return type == Type.Paranoid;
+  }
+
+  public boolean isMaximizing(Player pl) {
+    return pl == player;
+  }
+
+  /**
+   * Compares two evaluations from the view of the player, a positive result means the first one is better
+   */
+  public int compare(Evaluation e1, Evaluation e2) {
+    return comp(players.get(player)).compare(e1, e2);
+  }
+
   public Evaluation merge(MutableList<Evaluation> values) {
     Evaluation avg = new Evaluation(players.size());
     for (int i = 0; i < avg.ratings.length; i++) {
@@ -180,9 +203,17 @@ public class Strategy {
     return eval;
   }
 
+  /**
+   * Returns a copy of the evaluation with the rating of the blocked player cleared
+   */
   public Evaluation block(Player player, Evaluation eval) {
-    eval.ratings[players.get(player)] = 0;
-    return eval;
+    Evaluation blocked = new Evaluation(eval);
+    blocked.ratings[players.get(player)] = 0;
+    return blocked;
+  }
+
+  public float getRating(Player player, Evaluation eval) {
+    return eval.ratings[players.get(player)];
   }
 
   @Override
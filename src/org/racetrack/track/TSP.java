@@ -2,16 +2,18 @@ package org.racetrack.track;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
+import org.eclipse.collections.api.block.function.*;
 import org.eclipse.collections.api.collection.*;
 import org.eclipse.collections.api.list.*;
-import org.eclipse.collections.api.map.primitive.*;
+import org.eclipse.collections.api.list.primitive.*;
 import org.eclipse.collections.api.set.primitive.*;
-import org.eclipse.collections.impl.factory.primitive.*;
 import org.eclipse.collections.impl.list.mutable.*;
+import org.eclipse.collections.impl.list.mutable.primitive.*;
 import org.eclipse.collections.impl.set.mutable.primitive.*;
+import org.racetrack.collections.*;
+import org.racetrack.concurrent.*;
 import org.racetrack.config.*;
 import org.racetrack.karoapi.*;
 import org.racetrack.rules.*;
@@ -21,16 +23,19 @@ public final class TSP {
   private static final Logger logger = Logger.getLogger(PathFinder.class.toString());
 
   private boolean withMultiCrash = Settings.getInstance().withMultiCrash();
+  private boolean withPackedSearch = Settings.getInstance().withPackedSearch();
+  private boolean withAStarSearch = Settings.getInstance().withAStarSearch();
+  private boolean withMovesToGo = Settings.getInstance().withMovesToGo();
 
   private Game game;
   private GameRule rule;
 
-  private final ReadWriteLock edgeLengthLock = new SeqLock(false);
-  private MutableObjectIntMap<String> edgeLength = ObjectIntMaps.mutable.empty();
+  private CpDistances cpDistances;
 
   public TSP(Game game, GameRule rule) {
     this.game = game;
     this.rule = rule;
+    cpDistances = CpDistances.get(game, rule);
   }
 
   public TourStopover solve(MutableCollection<Move> possibles, MutableCollection<MapTile> missingCps) {
@@ -47,90 +52,203 @@ public final class TSP {
     MutableCollection<Move> startMoves = possibles.select(rule.filterPossibles());
     CrashDetector crashDetector = new CrashDetector(rule, startMoves);
 
-    TourStopover tours = getStartTours(startMoves, missingCps.toSortedList(), crashDetector);
-
-    int minimumLength = tours.minTourLength;
+    HeldKarp heldKarp = new HeldKarp(missingCps.toSortedList(), getStartLengths(startMoves, missingCps, crashDetector));
+    cpDistances.save();
+    int minimumLength = heldKarp.getMinTourLength();
+    int margin;
     if (game.getMap().getSetting().getTourLengthSafetyMargin() > 0) { // depends on predefined rules for a specific map
-      tours.trimMax(minimumLength + game.getMap().getSetting().getTourLengthSafetyMargin());
+      margin = game.getMap().getSetting().getTourLengthSafetyMargin();
     } else if (rule.isMapCircuit() || missingCps.size() <= 1 || game.getMap().areCpsClustered(missingCps)) {
-      tours.trimMax(minimumLength + 4);
+      margin = 4;
     } else {
-      tours.trimMax(minimumLength + 4); // TODO
+      margin = 4; // TODO
     }
+    TourStopover tours = heldKarp.getTours(heldKarp.add(minimumLength, margin));
 
     // tours.printHistogram();
 
     return tours;
   }
 
-  private TourStopover getStartTours(MutableCollection<Move> startMoves, MutableCollection<MapTile> missingCps,
+  /**
+   * Returns the lengths from the start moves to each checkpoint, indexed by the ordinal of the checkpoint. The
+   * distances between all checkpoints are calculated meanwhile, if they are not known for the map yet.
+   */
+  private int[] getStartLengths(MutableCollection<Move> startMoves, MutableCollection<MapTile> missingCps,
       CrashDetector crashDetector) {
-    TourStopover tours = TourStopover.start();
-    ForkJoinPool executor = new ForkJoinPool();
-    MutableCollection<ForkJoinTask<TourStopover>> tasks = missingCps.collect(nextCp -> executor
-        .submit(getTours(tours.addStop(nextCp, findEdgeLength(false, startMoves, nextCp, crashDetector)),
-            missingCps.reject(c -> c.equals(nextCp)))));
-
-    tasks.forEach(t -> tours.setMin(t.join()));
-    executor.shutdownNow();
-    return tours;
+    int[] startLengths = new int[MapTile.values().length];
+    MutableList<MapTile> targets = missingCps.toSortedList().with(MapTile.FINISH);
+    MutableList<Callable<Integer>> tasks = new FastList<>();
+    for (int i = 0; i < missingCps.size(); i++) {
+      MapTile cp = targets.get(i);
+      tasks.add(() -> startLengths[cp.ordinal()] = findEdgeLength(false, startMoves, cp, crashDetector));
+      for (MapTile to : targets.subList(i + 1, targets.size())) {
+        tasks.add(() -> getCpDistance(null, cp, to));
+      }
+    }
+
+    try {
+      for (Future<Integer> task : ComputePool.get().invokeAll(tasks)) {
+        task.get();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      logger.warning(e.getMessage());
+    }
+    return startLengths;
   }
 
-  private RecursiveTask<TourStopover> getTours(TourStopover stop, MutableCollection<MapTile> missingCps) {
-    return new RecursiveTask<TSP.TourStopover>() {
-      private static final long serialVersionUID = 1L;
+  /**
+   * Held-Karp dynamic programming over the subsets of the missing checkpoints. As the distance between two checkpoints
+   * depends on the checkpoint before (see {@link TSP#getCpDistance(MapTile, MapTile, MapTile)}), a state consists of
+   * the checkpoints still missing and the last two stops of the tour.
+   */
+  private class HeldKarp {
+
+    private MapTile[] cps;
+    private int[] startLengths;
+    private int start;
+    private int[] completions;
+
+    private HeldKarp(MutableList<MapTile> missingCps, int[] startLengths) {
+      cps = missingCps.toArray(new MapTile[missingCps.size()]);
+      this.startLengths = startLengths;
+      start = cps.length; // index of the start as stop before a checkpoint
+      completions = new int[(1 << cps.length) * (cps.length + 1) * cps.length];
+      Arrays.fill(completions, -1);
+    }
 
-      @Override
-      protected TourStopover compute() {
-        Thread.currentThread().setName("TSP from " + stop.cp + " to " + missingCps);
+    private int getMinTourLength() {
+      int all = (1 << cps.length) - 1;
+      int minTourLength = Integer.MAX_VALUE;
+      for (int cp = 0; cp < cps.length; cp++) {
+        minTourLength = Math.min(minTourLength,
+            add(startLengths[cps[cp].ordinal()], getCompletion(all & ~(1 << cp), start, cp)));
+      }
+      return minTourLength;
+    }
+
+    /**
+     * Returns the tree of all tours not longer than the given length. Only branches within that length are created.
+     */
+    private TourStopover getTours(int maxLength) {
+      TourStopover tours = TourStopover.start();
+      int all = (1 << cps.length) - 1;
+      for (int cp = 0; cp < cps.length; cp++) {
+        addTours(tours, startLengths[cps[cp].ordinal()], all & ~(1 << cp), start, cp, maxLength);
+      }
+      return tours;
+    }
 
-        if (missingCps.isEmpty()) {
-          stop.setMin(stop.addFinish(getCpDistance(stop.prev, stop, MapTile.FINISH)));
+    private void addTours(TourStopover stop, int length, int missing, int prev, int cp, int maxLength) {
+      int minTourLength = add(add(stop.totalLength, length), getCompletion(missing, prev, cp));
+      if (minTourLength > maxLength)
+        return;
+
+      TourStopover nextStop = stop.addStop(cps[cp], length);
+      nextStop.minTourLength = minTourLength;
+      stop.setMin(nextStop);
+
+      if (missing == 0) {
+        nextStop.addFinish(getLength(prev, cp, MapTile.FINISH));
+      } else {
+        for (int next = 0; next < cps.length; next++) {
+          if ((missing & (1 << next)) != 0) {
+            addTours(nextStop, getLength(prev, cp, cps[next]), missing & ~(1 << next), cp, next, maxLength);
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the shortest length from the checkpoint over all missing checkpoints to the finishline
+     */
+    private int getCompletion(int missing, int prev, int cp) {
+      int index = (missing * (cps.length + 1) + prev) * cps.length + cp;
+      if (completions[index] < 0) {
+        int completion;
+        if (missing == 0) {
+          completion = getLength(prev, cp, MapTile.FINISH);
         } else {
-          MutableCollection<RecursiveTask<TourStopover>> tasks = missingCps
-              .collect(nextCp -> getTours(stop.addStop(nextCp, getCpDistance(stop.prev, stop, nextCp)),
-                  missingCps.reject(c -> c.equals(nextCp))));
-          tasks.forEach(t -> t.fork());
-          tasks.forEach(t -> stop.setMin(t.join()));
+          completion = Integer.MAX_VALUE;
+          for (int next = 0; next < cps.length; next++) {
+            if ((missing & (1 << next)) != 0) {
+              completion = Math.min(completion,
+                  add(getLength(prev, cp, cps[next]), getCompletion(missing & ~(1 << next), cp, next)));
+            }
+          }
         }
-        return stop;
+        completions[index] = completion;
       }
-    };
+      return completions[index];
+    }
+
+    private int getLength(int prev, int cp, MapTile toCp) {
+      return getCpDistance(prev == start ? MapTile.START : cps[prev], cps[cp], toCp);
+    }
+
+    private int add(int length1, int length2) {
+      return (int) Math.min((long) length1 + length2, Integer.MAX_VALUE);
+    }
+
   }
 
-  private int getCpDistance(TourStopover prev, TourStopover from, MapTile toCp) {
-    String key = from.cp.compareTo(toCp) < 0 ? from.cp.name() + "/" + toCp.name() : toCp.name() + "/" + from.cp.name();
-    SeqLock.SeqReadLock lock = (SeqLock.SeqReadLock) edgeLengthLock.readLock();
+  private int getCpDistance(MapTile prev, MapTile from, MapTile toCp) {
+    int dist = cpDistances.getDistance(from, toCp);
+    if (dist == CpDistances.UNKNOWN) {
+      cpDistances.putDistance(from, toCp, getEdgeLength(from, toCp));
+      dist = cpDistances.getDistance(from, toCp);
+    }
 
-    try {
-      while (true) {
-        long counter = lock.tryReadLock();
-        Integer dist = edgeLength.getOrThrow(key);
-        if (lock.retryReadLock(counter)) {
-          // triangle-inequality
-          if (prev != null && !prev.isStart()) {
-            int directLength = getCpDistance(null, prev, toCp);
-            int startDist = getCpDistance(null, prev, from.cp);
-            return startDist + dist < directLength ? directLength - startDist : dist;
-          }
+    // triangle-inequality
+    if (prev != null && !prev.isStart()) {
+      int directLength = getCpDistance(null, prev, toCp);
+      int startDist = getCpDistance(null, prev, from);
+      return startDist + dist < directLength ? directLength - startDist : dist;
+    }
+    return dist;
+  }
+
+  /**
+   * Looks up the distance in the moves to go of the map if they are exact for this game, otherwise searches for it
+   */
+  private int getEdgeLength(MapTile fromCp, MapTile toCp) {
+    Collection<Move> startMoves = game.getMap().getTilesAsMoves(fromCp);
+    if (withMovesToGo && rule.isHistoryFree() && (toCp.isFinish() || !rule.isFinishlineBlockedForDist())) {
+      MovesToGo movesToGo = MovesToGo.get(rule);
+      if (movesToGo != null) {
+        int dist = movesToGo.getMinPathLen(startMoves, toCp);
+        if (dist != MovesToGo.UNREACHABLE)
           return dist;
-        }
-      }
-    } catch (IllegalStateException ise) {
-      int dist = findEdgeLength(true, game.getMap().getTilesAsMoves(from.cp), toCp, null);
-      edgeLengthLock.writeLock().lock();
-      int oldDist = edgeLength.getIfAbsentPut(key, dist);
-      if (oldDist != dist) {
-        edgeLength.put(key, Math.min(oldDist, dist));
       }
-      edgeLengthLock.writeLock().unlock();
-      return dist;
     }
+    return findEdgeLength(true, startMoves, toCp, null);
   }
 
   private int findEdgeLength(boolean isFromCp, Collection<Move> startMoves, MapTile toCp, CrashDetector cD) {
+    int length = withPackedSearch && rule.isHistoryFree() ? searchPacked(isFromCp, startMoves, toCp, cD)
+        : search(isFromCp, startMoves, toCp, cD);
+    if (length == Integer.MAX_VALUE) {
+      if (toCp.isFinish()) {
+        logger.warning("No valid path found from " + startMoves + " to " + toCp + ". This map is recognized as "
+            + (rule.isMapCircuit() ? "circuit" : "non-circuit")
+            + ". Set this map to non/circuit manually if this error still happens.");
+      } else {
+        logger.warning("No path found from " + startMoves + " to " + toCp.toString());
+      }
+    }
+    return length;
+  }
+
+  private int search(boolean isFromCp, Collection<Move> startMoves, MapTile toCp, CrashDetector cD) {
     MutableIntSet visitedMoves = new IntHashSet();
-    Queue<Move> queue = new LinkedList<>(startMoves);
+    Queue<Move> queue;
+    if (withAStarSearch) {
+      TileDistance distance = TileDistance.get(game.getMap(), toCp);
+      queue = ShortBucketPriorityQueue.of(startMoves,
+          (Function<Move, Short>) move -> (short) (move.getPathLen() + distance.estimate(rule, move)));
+    } else {
+      queue = new LinkedList<>(startMoves);
+    }
     while (!queue.isEmpty()) {
       Move move = queue.poll();
       if (visitedMoves.add(move.hashCode())) {
@@ -149,16 +267,81 @@ public final class TSP {
         }
       }
     }
-    if (toCp.isFinish()) {
-      logger.warning("No valid path found from " + startMoves + " to " + toCp + ". This map is recognized as "
-          + (rule.isMapCircuit() ? "circuit" : "non-circuit")
-          + ". Set this map to non/circuit manually if this error still happens.");
-    } else {
-      logger.warning("No path found from " + startMoves + " to " + toCp.toString());
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Same as {@link #search(boolean, Collection, MapTile, CrashDetector)} on packed states (see {@link MoveState}) for
+   * history free rules. The successors are written into a reused buffer, move objects are only created for crashs.
+   */
+  private int searchPacked(boolean isFromCp, Collection<Move> startMoves, MapTile toCp, CrashDetector cD) {
+    TileDistance distance = withAStarSearch ? TileDistance.get(game.getMap(), toCp) : null;
+    MutableLongSet visitedMoves = new LongHashSet();
+    MutableLongList[] buckets = new MutableLongList[MoveState.MAX_PATH_LEN + TileDistance.UNREACHABLE + 1];
+    for (Move move : startMoves) {
+      enqueue(buckets, 0, MoveState.of(move), distance);
+    }
+
+    long[] next = new long[MapRule.MAX_NEXT];
+    for (int priority = 0; priority < buckets.length; priority++) {
+      MutableLongList bucket = buckets[priority];
+      if (bucket == null) {
+        continue;
+      }
+      for (int i = 0; i < bucket.size(); i++) {
+        long state = bucket.get(i);
+        if (!visitedMoves.add(MoveState.key(state))) {
+          continue;
+        }
+
+        int x = MoveState.x(state);
+        int y = MoveState.y(state);
+        int xv = MoveState.xv(state);
+        int yv = MoveState.yv(state);
+        int len = MoveState.pathLen(state);
+        if (toCp.isFinish() && rule.hasForbidXdFinishline(x, y, xv, yv)) {
+          continue;
+        } else if (isFromCp && toCp.isCp() && rule.hasXdFinishlineForDist(x, y, xv, yv)) {
+          continue;
+        } else if (rule.hasXdCp(x, y, xv, yv, toCp))
+          return len;
+        else if (len < MoveState.MAX_PATH_LEN) {
+          int count = rule.getNext(x, y, xv, yv, next);
+          for (int n = 0; n < count; n++) {
+            long nextState = MoveState.of(next[n], len + 1);
+            enqueue(buckets, priority, MoveState.isCrashed(state) ? MoveState.withCrash(nextState) : nextState,
+                distance);
+          }
+          if (count == 0 && (game.isCrashAllowed() || (cD != null && cD.isCrashAhead(state)))) {
+            Move crash = new Move(x, y, xv, yv);
+            for (Move afterCrash : crash.getMovesAfterCrash(game.getZzz(), withMultiCrash)) {
+              int afterCrashLen = len + afterCrash.getPathLen() - crash.getPathLen();
+              if (afterCrashLen <= MoveState.MAX_PATH_LEN) {
+                enqueue(buckets, priority, MoveState.withCrash(MoveState.of(afterCrash.getX(), afterCrash.getY(),
+                    afterCrash.getXv(), afterCrash.getYv(), afterCrashLen)), distance);
+              }
+            }
+          }
+        }
+      }
+      buckets[priority] = null;
     }
     return Integer.MAX_VALUE;
   }
 
+  /**
+   * Adds the state to the bucket of its path length plus estimate, but never to a bucket already passed
+   */
+  private void enqueue(MutableLongList[] buckets, int minPriority, long state, TileDistance distance) {
+    int priority = MoveState.pathLen(state) + (distance != null ? distance.estimate(rule, MoveState.x(state),
+        MoveState.y(state), MoveState.xv(state), MoveState.yv(state)) : 0);
+    priority = Math.max(minPriority, Math.min(priority, buckets.length - 1));
+    if (buckets[priority] == null) {
+      buckets[priority] = new LongArrayList();
+    }
+    buckets[priority].add(state);
+  }
+
   public static class TourStopover implements Comparable<TourStopover> {
 
     private static TourStopover start() {
@@ -205,18 +388,6 @@ public final class TSP {
       next.sortThis();
     }
 
-    private void trimMax(int maxLength) {
-      Iterator<TourStopover> it = next.iterator();
-      while (it.hasNext()) {
-        TourStopover stop = it.next();
-        if (stop.minTourLength > maxLength) {
-          it.remove();
-        } else {
-          stop.trimMax(maxLength);
-        }
-      }
-    }
-
     private int getStartLength() {
       return prev != null ? prev.getStartLength() : minTourLength;
     }
@@ -0,0 +1,92 @@
+package org.racetrack.track;
+
+import java.util.*;
+
+import org.racetrack.karoapi.*;
+import org.racetrack.rules.*;
+
+/**
+ * Lower bound for the number of moves needed to cross a checkpoint (or the finishline) of a map. It is derived from
+ * the number of tiles from each tile of the map to the nearest tile of the checkpoint, assuming that the car
+ * accelerates at every move. Used as heuristic for the A* search in {@link PathFinder} and {@link TSP}.
+ *
+ * The estimate never decreases by more than one per move, so states are still expanded on their shortest path first.
+ */
+public final class TileDistance {
+
+  public static final int UNREACHABLE = MoveState.MAX_PATH_LEN + 1;
+
+  // about the checkpoints and the finishline of the maps of all running games
+  private static final int MAX_DISTANCES = 128;
+
+  private static MapCache<TileDistance> distances = new MapCache<>(MAX_DISTANCES);
+
+  public static TileDistance get(KaroMap map, MapTile cp) {
+    return distances.get(map, cp.name(), () -> new TileDistance(map, cp));
+  }
+
+  private MapTile cp;
+  private int cols;
+  private int rows;
+  private int[] distance;
+
+  private TileDistance(KaroMap map, MapTile cp) {
+    this.cp = cp;
+    cols = map.getCols();
+    rows = map.getRows();
+    distance = new int[cols * rows];
+    Arrays.fill(distance, UNREACHABLE);
+
+    // breadth first search over all tiles on track, diagonal steps are as long as straight ones
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (Move tile : map.getTilesAsMoves(cp)) {
+      distance[tile.getY() * cols + tile.getX()] = 0;
+      queue.add(tile.getY() * cols + tile.getX());
+    }
+    while (!queue.isEmpty()) {
+      int tile = queue.poll();
+      int x = tile % cols;
+      int y = tile / cols;
+      for (int nx = x - 1; nx <= x + 1; nx++) {
+        for (int ny = y - 1; ny <= y + 1; ny++) {
+          if (nx >= 0 && nx < cols && ny >= 0 && ny < rows && distance[ny * cols + nx] == UNREACHABLE
+              && !MapTile.OFF_TRACK.contains(map.getTileOf(nx, ny))) {
+            distance[ny * cols + nx] = distance[tile] + 1;
+            queue.add(ny * cols + nx);
+          }
+        }
+      }
+    }
+  }
+
+  public int getDistance(int x, int y) {
+    if (x < 0 || x >= cols || y < 0 || y >= rows)
+      return UNREACHABLE;
+    return distance[y * cols + x];
+  }
+
+  /**
+   * Returns the minimal number of moves after the given one to cross the checkpoint, which is 0 if the move already
+   * crosses it. The n-th move after the current one covers at most speed + n tiles.
+   */
+  public int estimate(MapRule rule, int x, int y, int xv, int yv) {
+    int dist = getDistance(x, y);
+    if (dist == UNREACHABLE)
+      return UNREACHABLE;
+
+    int speed = Math.max(Math.abs(xv), Math.abs(yv));
+    if (dist <= speed && rule.hasXdCp(x, y, xv, yv, cp))
+      return 0;
+
+    int moves = 0;
+    for (int covered = 0; covered < dist; covered += speed + moves) {
+      moves++;
+    }
+    return moves;
+  }
+
+  public int estimate(MapRule rule, Move move) {
+    return estimate(rule, move.getX(), move.getY(), move.getXv(), move.getYv());
+  }
+
+}
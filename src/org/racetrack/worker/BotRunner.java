@@ -54,6 +54,8 @@ public class BotRunner implements Runnable, GameHandler, ChatHandler {
 
   @Override
   public void run() {
+    CpDistances.loadAll();
+
     try {
       karo = new KaroClient(userLogin, password, secureConnection, useBetaApi);
       if (karo.logIn()) {
@@ -0,0 +1,60 @@
+package org.racetrack.collections;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class ConcurrentLongIntCacheTest {
+
+  // the smallest cache has as many slots as probes, so every key finds a free slot until it is full
+  static final int SLOTS = 16;
+
+  ConcurrentLongIntCache cache = null;
+
+  @Before
+  public void initializeCache() {
+    cache = new ConcurrentLongIntCache(SLOTS);
+  }
+
+  @Test
+  public void whenAbsent() {
+    assertEquals(-1, cache.getIfAbsent(1L, -1));
+
+    // the marker of absent values is never returned
+    cache.put(2L, Integer.MIN_VALUE);
+    assertEquals(-1, cache.getIfAbsent(2L, -1));
+
+    ConcurrentLongIntCache zeroAbsent = new ConcurrentLongIntCache(SLOTS, 0);
+    zeroAbsent.put(3L, 0);
+    zeroAbsent.put(4L, Integer.MIN_VALUE);
+    assertEquals(-1, zeroAbsent.getIfAbsent(3L, -1));
+    assertEquals(Integer.MIN_VALUE, zeroAbsent.getIfAbsent(4L, -1));
+  }
+
+  @Test
+  public void whenPutAndUpdated() {
+    cache.put(-5L, 7);
+    assertEquals(7, cache.getIfAbsent(-5L, -1));
+
+    cache.put(-5L, 0);
+    assertEquals(0, cache.getIfAbsent(-5L, -1));
+  }
+
+  @Test
+  public void whenFull() {
+    for (int key = 0; key < SLOTS; key++) {
+      cache.put(key, key * 10);
+    }
+    // the put of a new key is dropped, the keys stored before are kept
+    cache.put(SLOTS, 1);
+    assertEquals(-1, cache.getIfAbsent(SLOTS, -1));
+    for (int key = 0; key < SLOTS; key++) {
+      assertEquals(key * 10, cache.getIfAbsent(key, -1));
+    }
+
+    // keys stored are still updated
+    cache.put(3L, 42);
+    assertEquals(42, cache.getIfAbsent(3L, -1));
+  }
+
+}
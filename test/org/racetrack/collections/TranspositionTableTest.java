@@ -0,0 +1,70 @@
+package org.racetrack.collections;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class TranspositionTableTest {
+
+  // a hash differing only in bits above the index of the smallest table, so both hashes share a bucket
+  static final long HASH = 0x1234L;
+  static final long SAME_BUCKET = HASH ^ (1L << 50);
+
+  TranspositionTable<String> table = null;
+
+  @Before
+  public void initializeTable() {
+    table = TranspositionTable.withMemory(1);
+  }
+
+  @Test
+  public void whenAbsent() {
+    assertNull(table.get(HASH, new long[] { 1 }));
+
+    table.put(HASH, new long[] { 1 }, 0, "first");
+    assertNull(table.get(HASH + 1, new long[] { 1 }));
+  }
+
+  @Test
+  public void whenHashCollides() {
+    table.put(HASH, new long[] { 1, 2 }, 0, "first");
+
+    // same hash with another key is not found
+    assertNull(table.get(HASH, new long[] { 1, 3 }));
+    assertEquals("first", table.get(HASH, new long[] { 1, 2 }));
+
+    // both keys are kept in the bucket
+    table.put(HASH, new long[] { 1, 3 }, -1, "second");
+    assertEquals("first", table.get(HASH, new long[] { 1, 2 }));
+    assertEquals("second", table.get(HASH, new long[] { 1, 3 }));
+  }
+
+  @Test
+  public void whenReplacingByPriority() {
+    table.put(HASH, new long[] { 1 }, 5, "high");
+    table.put(SAME_BUCKET, new long[] { 2 }, 3, "low");
+    assertEquals("high", table.get(HASH, new long[] { 1 }));
+    assertEquals("low", table.get(SAME_BUCKET, new long[] { 2 }));
+
+    // a lower priority always replaces the second entry
+    table.put(SAME_BUCKET, new long[] { 3 }, 1, "lower");
+    assertEquals("high", table.get(HASH, new long[] { 1 }));
+    assertNull(table.get(SAME_BUCKET, new long[] { 2 }));
+    assertEquals("lower", table.get(SAME_BUCKET, new long[] { 3 }));
+
+    // a higher or equal priority replaces the first entry
+    table.put(SAME_BUCKET, new long[] { 4 }, 5, "equal");
+    assertNull(table.get(HASH, new long[] { 1 }));
+    assertEquals("equal", table.get(SAME_BUCKET, new long[] { 4 }));
+    assertEquals("lower", table.get(SAME_BUCKET, new long[] { 3 }));
+  }
+
+  @Test
+  public void whenUpdatingSameKey() {
+    table.put(HASH, new long[] { 1 }, 5, "old");
+    // the entry of the key is replaced even with a lower priority
+    table.put(HASH, new long[] { 1 }, 0, "new");
+    assertEquals("new", table.get(HASH, new long[] { 1 }));
+  }
+
+}
@@ -0,0 +1,197 @@
+package org.racetrack.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+import org.racetrack.karoapi.*;
+
+/**
+ * Compares the line offsets, the tile masks and the move table with the walk along the line of a move, which looked up
+ * the tiles in the map before they were introduced
+ */
+public class KaroMapTest_CrossingTables {
+
+  KaroMap map = null;
+  TileMasks masks = null;
+
+  @Before
+  public void initializeMap() {
+    // the map is wider and higher than the max speed of the move table, so every velocity starts somewhere on it
+    String tiles = "OOOOOOXX12FS";
+    Random random = new Random(42);
+    StringBuilder code = new StringBuilder();
+    for (int y = 0; y < 18; y++) {
+      for (int x = 0; x < 20; x++) {
+        code.append(tiles.charAt(random.nextInt(tiles.length())));
+      }
+      code.append(y < 17 ? "\n" : "");
+    }
+    map = new KaroMap(code.toString());
+    masks = new TileMasks(map);
+  }
+
+  /**
+   * Returns the cells crossed by the move from its end back to its start as pairs of x and y
+   */
+  private static List<Integer> walk(int x, int y, int xv, int yv) {
+    int xStart = x - xv;
+    int yStart = y - yv;
+    int x0 = x;
+    int y0 = y;
+
+    int incx = -(xv == 0 ? 0 : (xv > 0 ? 1 : -1));
+    int incy = -(yv == 0 ? 0 : (yv > 0 ? 1 : -1));
+    int dx = Math.abs(xv);
+    int dy = Math.abs(yv);
+
+    int pdx, pdy, qdx, qdy, ddx, ddy;
+    int el, es;
+    if (dx > dy) { // x is fast direction
+      pdx = incx;
+      pdy = 0;
+      qdx = 0;
+      qdy = incy;
+      ddx = incx;
+      ddy = incy;
+      es = dy;
+      el = dx;
+    } else { // y is fast direction
+      pdx = 0;
+      pdy = incy;
+      qdx = incx;
+      qdy = 0;
+      ddx = incx;
+      ddy = incy;
+      es = dx;
+      el = dy;
+    }
+
+    List<Integer> cells = new ArrayList<>();
+    float err = (el - es) / 2f;
+    while (true) {
+      cells.add(x0);
+      cells.add(y0);
+      if (x0 == xStart && y0 == yStart)
+        return cells;
+
+      if (err < 0) { // move in slow direction
+        err += el;
+        x0 += qdx;
+        y0 += qdy;
+      } else if (err > 0) { // move in fast direction
+        err -= es;
+        x0 += pdx;
+        y0 += pdy;
+      } else { // diagonal
+        err += el;
+        err -= es;
+        x0 += ddx;
+        y0 += ddy;
+      }
+    }
+  }
+
+  private boolean isDrivenAcross(int x, int y, int xv, int yv, Collection<MapTile> tiles, boolean withCpRule) {
+    List<Integer> cells = walk(x, y, xv, yv);
+    for (int i = 0; i < cells.size(); i += 2) {
+      MapTile mapTile = map.getTileOf(cells.get(i), cells.get(i + 1));
+      if (tiles.contains(mapTile))
+        return true;
+      if (withCpRule && mapTile.isCpOrFinish())
+        return false;
+    }
+    return false;
+  }
+
+  private boolean startsOnMap(int x, int y, int xv, int yv) {
+    return map.contains(x - xv, y - yv);
+  }
+
+  @Test
+  public void whenWalkingLineOffsets() {
+    for (int yv = -LineOffsets.MAX_SPEED; yv <= LineOffsets.MAX_SPEED; yv++) {
+      for (int xv = -LineOffsets.MAX_SPEED; xv <= LineOffsets.MAX_SPEED; xv++) {
+        List<Integer> cells = walk(0, 0, xv, yv);
+        int[] offsets = LineOffsets.get(xv, yv);
+        assertEquals("Offsets of " + xv + "," + yv, cells.size(), offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+          assertEquals("Offsets of " + xv + "," + yv, cells.get(i).intValue(), offsets[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void whenMaskingTiles() {
+    for (int y = -1; y <= map.getRows(); y++) {
+      for (int x = -1; x <= map.getCols(); x++) {
+        if (!map.contains(x, y)) {
+          assertTrue(masks.isSet(masks.offTrack(), x, y));
+          assertFalse(masks.isSet(masks.cpOrFinish(), x, y));
+          continue;
+        }
+        MapTile tile = map.getTileOf(x, y);
+        assertEquals(MapTile.OFF_TRACK.contains(tile), masks.isSet(masks.offTrack(), x, y));
+        assertEquals(MapTile.CP_AND_FINISH.contains(tile), masks.isSet(masks.cpOrFinish(), x, y));
+        for (MapTile listed : MapTile.values()) {
+          assertEquals(listed.asList().contains(tile), masks.isSet(masks.of(listed), x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void whenDrivingAcrossMasks() {
+    for (int y = 0; y < map.getRows(); y++) {
+      for (int x = 0; x < map.getCols(); x++) {
+        for (int yv = -MoveTable.MAX_SPEED; yv <= MoveTable.MAX_SPEED; yv++) {
+          for (int xv = -MoveTable.MAX_SPEED; xv <= MoveTable.MAX_SPEED; xv++) {
+            if (!startsOnMap(x, y, xv, yv)) {
+              continue;
+            }
+            String move = x + "," + y + " " + xv + "," + yv;
+            assertEquals(move, isDrivenAcross(x, y, xv, yv, MapTile.OFF_TRACK, false),
+                masks.isDrivenAcross(x, y, xv, yv, masks.offTrack(), false));
+            assertEquals(move, isDrivenAcross(x, y, xv, yv, MapTile.CP_AND_FINISH, false),
+                masks.isDrivenAcross(x, y, xv, yv, masks.cpOrFinish(), false));
+            assertEquals(move, isDrivenAcross(x, y, xv, yv, MapTile.FINISH.asList(), false),
+                masks.isDrivenAcross(x, y, xv, yv, masks.of(MapTile.FINISH), false));
+            for (MapTile cp : new MapTile[] { MapTile.ONE, MapTile.TWO }) {
+              assertEquals(move, isDrivenAcross(x, y, xv, yv, cp.asList(), true),
+                  masks.isDrivenAcross(x, y, xv, yv, masks.of(cp), true));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void whenLookingUpMoveTable() {
+    MoveTable moves = new MoveTable(map, masks);
+    for (int y = 0; y < map.getRows(); y++) {
+      for (int x = 0; x < map.getCols(); x++) {
+        for (int yv = -MoveTable.MAX_SPEED; yv <= MoveTable.MAX_SPEED; yv++) {
+          for (int xv = -MoveTable.MAX_SPEED; xv <= MoveTable.MAX_SPEED; xv++) {
+            assertTrue(moves.contains(x, y, xv, yv));
+            if (!startsOnMap(x, y, xv, yv)) {
+              continue;
+            }
+            String move = x + "," + y + " " + xv + "," + yv;
+            assertEquals(move, !isDrivenAcross(x, y, xv, yv, MapTile.OFF_TRACK, false),
+                moves.is(MoveTable.ON_TRACK, x, y, xv, yv));
+            assertEquals(move, !isDrivenAcross(x, y, xv, yv, MapTile.CP_AND_FINISH, false),
+                moves.is(MoveTable.ON_ROAD, x, y, xv, yv));
+            assertEquals(move, isDrivenAcross(x, y, xv, yv, MapTile.FINISH.asList(), false),
+                moves.is(MoveTable.FINISH, x, y, xv, yv));
+          }
+        }
+      }
+    }
+    assertFalse(moves.contains(0, 0, MoveTable.MAX_SPEED + 1, 0));
+    assertFalse(moves.contains(map.getCols(), 0, 0, 0));
+  }
+
+}
@@ -0,0 +1,57 @@
+package org.racetrack.track;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.collections.api.list.*;
+import org.eclipse.collections.api.map.*;
+import org.eclipse.collections.impl.factory.*;
+import org.junit.*;
+import org.racetrack.karoapi.*;
+import org.racetrack.karoapi.Game.*;
+
+public class MCTSTest {
+
+  Game game = null;
+  Move fast = null;
+  Move slow = null;
+  MutableList<Move> moves = null;
+  MutableMap<Player, PathDag> paths = Maps.mutable.empty();
+
+  @Before
+  public void initializeGame() {
+    KaroMap map = new KaroMap(new String("OOOOOOOO\n" + "OOOOOOOO\n" + "OOOOOOOO"));
+    game = Game.getTestGame(map, false, Dir.classic, Crash.forbidden, 2);
+    Player player = game.getNext();
+    Player opponent = game.getActivePlayers().detect(p -> !p.equals(player));
+
+    // every player drives along a single line, only the player to move chooses between a short and a long one
+    fast = new Move(0, 0, 1, 0);
+    slow = new Move(0, 1, 1, 0);
+    Paths playerPaths = new Paths(Lists.mutable.with(drive(fast, 1), drive(slow, 2)));
+    moves = playerPaths.getMovesOfRound(1);
+    paths.put(player, PathDag.of(playerPaths));
+    paths.put(opponent, PathDag.of(new Paths(Lists.mutable.with(drive(new Move(0, 2, 1, 0), 2)))));
+  }
+
+  private Move drive(Move start, int rounds) {
+    Move move = start;
+    for (int i = 0; i < rounds; i++) {
+      move = move.getNext().detect(m -> m.getXv() == 1 && m.getYv() == 0);
+    }
+    return move;
+  }
+
+  @Test
+  public void whenPlayingThroughTwoRounds() {
+    // with two playouts both moves are rated by a single random playout from the root
+    MutableMap<Move, Float> expected = new MCTS(game, paths, moves, 1).rate(2);
+    // with many playouts the tree reaches into the following rounds, which must not change the ratings
+    MutableMap<Move, Float> ratings = new MCTS(game, paths, moves, 1).rate(500);
+
+    assertEquals(1f, expected.get(fast), 0.001f);
+    assertEquals(0.5f, expected.get(slow), 0.001f);
+    assertEquals(expected.get(fast), ratings.get(fast), 0.001f);
+    assertEquals(expected.get(slow), ratings.get(slow), 0.001f);
+  }
+
+}